@@ -1,13 +1,20 @@
+import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import java.io.*;
 import java.nio.file.*;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
 
 public class BatchCSVtoExcelConverter {
 
+    // -Dconvert.mode=dom builds each workbook in memory; -Dconvert.window=... rows kept in memory when streaming
+    private static final boolean STREAMING = !"dom".equalsIgnoreCase(System.getProperty("convert.mode", "stream"));
+    private static final int WINDOW = Integer.getInteger("convert.window", 100);
+    private static final int MAX_ROWS = SpreadsheetVersion.EXCEL2007.getMaxRows();
+
     public static void convertCSVsToExcel(String inputFolderPath, String outputFolderPath) throws IOException {
         File inputFolder = new File(inputFolderPath);
         File outputFolder = new File(outputFolderPath);
@@ -23,67 +30,145 @@ public class BatchCSVtoExcelConverter {
                 String excelFileName = csvFile.getName().replace(".csv", ".xlsx");
                 String csvFilePath = csvFile.getAbsolutePath();
                 String excelFilePath = Paths.get(outputFolderPath, excelFileName).toString();
-                convertCSVtoExcel(csvFilePath, excelFilePath);
-                System.out.println("Converted " + csvFile.getName() + " to " + excelFileName);
+                long start = System.nanoTime();
+                int rows = convertCSVtoExcel(csvFilePath, excelFilePath);
+                System.out.printf("Converted %s to %s: %d rows in %.1f s%n", csvFile.getName(), excelFileName, rows,
+                        (System.nanoTime() - start) / 1e9);
             }
         }
     }
 
-    public static void convertCSVtoExcel(String csvFilePath, String excelFilePath) throws IOException {
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Data");
+    // Rows are written through a streaming workbook keeping convert.window rows in memory (older ones go to a
+    // compressed temp file), so the size of the CSV does not matter; -Dconvert.mode=dom builds the whole
+    // XSSFWorkbook in memory instead. Past Excel's row limit the data continues on a further sheet.
+    public static int convertCSVtoExcel(String csvFilePath, String excelFilePath) throws IOException {
+        SXSSFWorkbook streaming = STREAMING ? new SXSSFWorkbook(WINDOW) : null;
+        if (streaming != null) {
+            streaming.setCompressTempFiles(true);
+        }
+        Workbook workbook = streaming != null ? streaming : new XSSFWorkbook();
+        int rows = 0;
+        try {
+            // One style for every date cell; a style per cell runs into the workbook's 64k style limit
+            CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("yyyy-MM-dd"));
 
-        try (BufferedReader br = new BufferedReader(new FileReader(csvFilePath))) {
-            String line;
+            Sheet sheet = workbook.createSheet("Data");
+            int[] widths = new int[16];
             int rowNum = 0;
-            while ((line = br.readLine()) != null) {
-                String[] data = line.split(",");
-                Row row = sheet.createRow(rowNum++);
-                int colNum = 0;
-                for (String value : data) {
-                    Cell cell = row.createCell(colNum++);
-
-                    // Enhanced Data Type Detection
-                    if (isNumeric(value)) {
-                        cell.setCellValue(Double.parseDouble(value));
-                        cell.setCellType(CellType.NUMERIC);
-                    } else if (isDate(value)) {
-                        try {
-                            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd"); // Adjust date format if needed
-                            Date date = dateFormat.parse(value);
-                            cell.setCellValue(date);
-                            cell.setCellType(CellType.NUMERIC);
-                            CellStyle cellStyle = workbook.createCellStyle();
-                            CreationHelper createHelper = workbook.getCreationHelper();
-                            cellStyle.setDataFormat(createHelper.createDataFormat().getFormat("yyyy-MM-dd"));
-                            cell.setCellStyle(cellStyle);
-                        } catch (ParseException e) {
-                            cell.setCellValue(value);
-                            cell.setCellType(CellType.STRING);
-                        }
-                    } else {
-                        cell.setCellValue(value);
-                        cell.setCellType(CellType.STRING);
+            try (BufferedReader br = new BufferedReader(new FileReader(csvFilePath), 1 << 16)) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (rowNum == MAX_ROWS) {
+                        setColumnWidths(sheet, widths);
+                        widths = new int[16];
+                        sheet = workbook.createSheet("Data " + (workbook.getNumberOfSheets() + 1));
+                        rowNum = 0;
                     }
+                    Row row = sheet.createRow(rowNum++);
+                    rows++;
 
-                    // Additional Formatting: Auto-size columns (optional)
-                    sheet.autoSizeColumn(colNum - 1);
+                    // Same fields as line.split(","): trailing empty ones dropped
+                    int end = line.length();
+                    while (end > 0 && line.charAt(end - 1) == ',') {
+                        end--;
+                    }
+                    int colNum = 0;
+                    for (int from = 0; from < end; colNum++) {
+                        int to = line.indexOf(',', from);
+                        if (to < 0 || to > end) {
+                            to = end;
+                        }
+                        Cell cell = row.createCell(colNum);
+                        setValue(cell, line, from, to, dateStyle);
+                        if (colNum >= widths.length) {
+                            widths = Arrays.copyOf(widths, Math.max(colNum + 1, widths.length * 2));
+                        }
+                        widths[colNum] = Math.max(widths[colNum], to - from);
+                        from = to + 1;
+                    }
                 }
             }
+            setColumnWidths(sheet, widths);
+
+            try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(excelFilePath), 1 << 16)) {
+                workbook.write(outputStream);
+            }
+        } finally {
+            if (streaming != null) {
+                streaming.dispose();
+            }
+            workbook.close();
+        }
+        return rows;
+    }
+
+    // Enhanced Data Type Detection: numbers and yyyy-MM-dd dates, everything else as text
+    private static void setValue(Cell cell, String line, int from, int to, CellStyle dateStyle) {
+        if (isNumeric(line, from, to)) {
+            cell.setCellValue(SheetRow.parseDouble(line, from, to));
+        } else if (isDate(line, from, to)) {
+            int year = digits(line, from, 4);
+            int month = digits(line, from + 5, 2);
+            int day = digits(line, from + 8, 2);
+            if (month >= 1 && month <= 12 && day >= 1 && day <= YearMonth.of(year, month).lengthOfMonth()) {
+                cell.setCellValue(LocalDate.of(year, month, day));
+                cell.setCellStyle(dateStyle);
+            } else {
+                cell.setCellValue(line.substring(from, to));
+            }
+        } else {
+            cell.setCellValue(line.substring(from, to));
         }
+    }
 
-        try (FileOutputStream outputStream = new FileOutputStream(excelFilePath)) {
-            workbook.write(outputStream);
+    // Column widths from the longest value seen in each column (plus padding), set once per sheet;
+    // autoSizeColumn would measure every cell again and, on a streaming sheet, only sees the rows still in memory
+    private static void setColumnWidths(Sheet sheet, int[] widths) {
+        for (int col = 0; col < widths.length; col++) {
+            if (widths[col] > 0) {
+                sheet.setColumnWidth(col, Math.min(widths[col] + 2, 255) * 256);
+            }
         }
     }
 
-    private static boolean isNumeric(String str) {
-        return str.matches("-?\\d+(\\.\\d+)?");
+    // -?\d+(\.\d+)?
+    private static boolean isNumeric(String s, int from, int to) {
+        int i = from;
+        if (i < to && s.charAt(i) == '-') {
+            i++;
+        }
+        int intDigits = skipDigits(s, i, to);
+        if (intDigits == 0) {
+            return false;
+        }
+        i += intDigits;
+        if (i == to) {
+            return true;
+        }
+        return s.charAt(i) == '.' && i + 1 < to && skipDigits(s, i + 1, to) == to - i - 1;
     }
 
-    private static boolean isDate(String str) {
-        // You can customize this date pattern as needed
-        return str.matches("\\d{4}-\\d{2}-\\d{2}");
+    // \d{4}-\d{2}-\d{2}
+    private static boolean isDate(String s, int from, int to) {
+        return to - from == 10 && s.charAt(from + 4) == '-' && s.charAt(from + 7) == '-'
+                && skipDigits(s, from, from + 4) == 4 && skipDigits(s, from + 5, from + 7) == 2 && skipDigits(s, from + 8, to) == 2;
+    }
+
+    private static int skipDigits(String s, int from, int to) {
+        int i = from;
+        while (i < to && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+            i++;
+        }
+        return i - from;
+    }
+
+    private static int digits(String s, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            value = value * 10 + (s.charAt(i) - '0');
+        }
+        return value;
     }
 
     public static void main(String[] args) {
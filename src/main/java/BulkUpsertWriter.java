@@ -0,0 +1,142 @@
+import java.sql.*;
+import java.util.List;
+
+public class BulkUpsertWriter {
+
+    // Rows per executeBatch; with rewriteBatchedStatements the driver sends each batch as one multi-row INSERT
+    private static final int BATCH_SIZE = Integer.getInteger("upsert.batchSize", 500);
+
+    private static final String DAILY_UPSERT_SQL = "INSERT INTO daily_data (date, symbol, conf, open, high, low, close, vwap, vol, prev_close, turnover, trans, diff, `range`, diff_perc, range_perc, vwap_perc, days_120, days_180, weeks_52_high, weeks_52_low) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE conf = VALUES(conf), open = VALUES(open), high = VALUES(high), low = VALUES(low), close = VALUES(close), " +
+            "vwap = VALUES(vwap), vol = VALUES(vol), prev_close = VALUES(prev_close), turnover = VALUES(turnover), trans = VALUES(trans), " +
+            "diff = VALUES(diff), `range` = VALUES(`range`), diff_perc = VALUES(diff_perc), range_perc = VALUES(range_perc), vwap_perc = VALUES(vwap_perc), " +
+            "days_120 = VALUES(days_120), days_180 = VALUES(days_180), weeks_52_high = VALUES(weeks_52_high), weeks_52_low = VALUES(weeks_52_low)";
+
+    private static final String LIVE_UPSERT_SQL = "INSERT INTO live_data (date, symbol, ltp, pointChange, perChange, open, high, low, vol, prev_close) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE ltp = VALUES(ltp), pointChange = VALUES(pointChange), perChange = VALUES(perChange), open = VALUES(open), " +
+            "high = VALUES(high), low = VALUES(low), vol = VALUES(vol), prev_close = VALUES(prev_close)";
+
+    // Upsert so a re-sent tick is idempotent against the (timestamp, symbol) key of partitioned tick storage
+    private static final String TRANSACTION_INSERT_SQL = "INSERT INTO transaction_data (timestamp, symbol, ltp, pointChange, perChange, open, high, low, vol, prev_close) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE ltp = VALUES(ltp), pointChange = VALUES(pointChange), perChange = VALUES(perChange), open = VALUES(open), " +
+            "high = VALUES(high), low = VALUES(low), vol = VALUES(vol), prev_close = VALUES(prev_close)";
+
+    interface RowBinder<T> {
+        void bind(PreparedStatement pstmt, T row) throws SQLException;
+    }
+
+    // Upserts one scraped daily page against unique_date_symbol in a single transaction
+    public static int upsertDailyData(Connection conn, List<DailyRow> rows) throws SQLException {
+        long start = System.nanoTime();
+        int written = inTransaction(conn, () -> executeBatched(conn, DAILY_UPSERT_SQL, rows, BulkUpsertWriter::bindDaily));
+        report("daily_data", written, start);
+        return written;
+    }
+
+    // Upserts the live_data snapshot and appends the transaction_data ticks of one page in a single transaction
+    public static int writeLiveData(Connection conn, List<LiveRow> rows, Timestamp timestamp) throws SQLException {
+        long start = System.nanoTime();
+        int written = inTransaction(conn, () -> {
+            int count = executeBatched(conn, LIVE_UPSERT_SQL, rows, BulkUpsertWriter::bindLive);
+            executeBatched(conn, TRANSACTION_INSERT_SQL, rows, (pstmt, row) -> bindTransaction(pstmt, row, timestamp));
+            return count;
+        });
+        report("live_data/transaction_data", written, start);
+        return written;
+    }
+
+    private interface SqlWork {
+        int run() throws SQLException;
+    }
+
+    private static int inTransaction(Connection conn, SqlWork work) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            int result = work.run();
+            conn.commit();
+            return result;
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    static <T> int executeBatched(Connection conn, String sql, List<T> rows, RowBinder<T> binder) throws SQLException {
+        int pending = 0;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (T row : rows) {
+                binder.bind(pstmt, row);
+                pstmt.addBatch();
+                if (++pending == BATCH_SIZE) {
+                    pstmt.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                pstmt.executeBatch();
+            }
+        }
+        return rows.size();
+    }
+
+    private static void report(String table, int rows, long startNanos) {
+        long elapsedMs = (System.nanoTime() - startNanos) / 1_000_000;
+        System.out.println("Flushed " + rows + " rows to " + table + " in " + elapsedMs + " ms");
+    }
+
+    private static void bindDaily(PreparedStatement pstmt, DailyRow row) throws SQLException {
+        pstmt.setObject(1, row.date);
+        pstmt.setString(2, row.symbol);
+        pstmt.setDouble(3, row.conf);
+        pstmt.setDouble(4, row.open);
+        pstmt.setDouble(5, row.high);
+        pstmt.setDouble(6, row.low);
+        pstmt.setDouble(7, row.close);
+        pstmt.setString(8, row.vwap);
+        pstmt.setDouble(9, row.vol);
+        pstmt.setDouble(10, row.prevClose);
+        pstmt.setDouble(11, row.turnover);
+        pstmt.setInt(12, row.trans);
+        pstmt.setString(13, row.diff);
+        pstmt.setDouble(14, row.range);
+        pstmt.setString(15, row.diffPerc);
+        pstmt.setDouble(16, row.rangePerc);
+        pstmt.setString(17, row.vwapPerc);
+        pstmt.setDouble(18, row.days120);
+        pstmt.setDouble(19, row.days180);
+        pstmt.setDouble(20, row.weeks52High);
+        pstmt.setDouble(21, row.weeks52Low);
+    }
+
+    private static void bindLive(PreparedStatement pstmt, LiveRow row) throws SQLException {
+        pstmt.setObject(1, row.date);
+        pstmt.setString(2, row.symbol);
+        pstmt.setDouble(3, row.ltp);
+        pstmt.setString(4, row.pointChange);
+        pstmt.setString(5, row.perChange);
+        pstmt.setDouble(6, row.open);
+        pstmt.setDouble(7, row.high);
+        pstmt.setDouble(8, row.low);
+        pstmt.setDouble(9, row.vol);
+        pstmt.setDouble(10, row.prevClose);
+    }
+
+    private static void bindTransaction(PreparedStatement pstmt, LiveRow row, Timestamp timestamp) throws SQLException {
+        pstmt.setTimestamp(1, timestamp);
+        pstmt.setString(2, row.symbol);
+        pstmt.setDouble(3, row.ltp);
+        pstmt.setString(4, row.pointChange);
+        pstmt.setString(5, row.perChange);
+        pstmt.setDouble(6, row.open);
+        pstmt.setDouble(7, row.high);
+        pstmt.setDouble(8, row.low);
+        pstmt.setDouble(9, row.vol);
+        pstmt.setDouble(10, row.prevClose);
+    }
+}
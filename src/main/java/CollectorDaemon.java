@@ -0,0 +1,150 @@
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Runs the live, daily and end-of-day collectors in one process: each URL is fetched once per tick
+// and its rows are fanned out to every sink registered for it.
+public class CollectorDaemon {
+
+    static final String LIVE_TRADING_URL = "https://www.sharesansar.com/live-trading";
+    static final String TODAY_SHARE_PRICE_URL = "https://www.sharesansar.com/today-share-price";
+
+    private static final long TICK_MS = Long.getLong("collector.tickMs", 60000);
+    private static final long STATS_INTERVAL_MS = 15 * 60000;
+    private static final int THREADS = Integer.getInteger("collector.threads", 4);
+
+    private final Map<String, List<RowSink>> sinksByUrl = new LinkedHashMap<>();
+    private final List<RowSink> sinks = new ArrayList<>();
+    private final Map<RowSink, LocalDate> lastCloseRun = new HashMap<>();
+    private final List<TickScheduler.Ticker> tickers = new ArrayList<>();
+    private final TickScheduler scheduler = new TickScheduler(THREADS);
+    private LocalDate currentDate = LocalDate.now();
+
+    public static void main(String[] args) {
+        withDefaultSinks().start();
+    }
+
+    // The live, daily and end-of-day collectors, not started yet so callers can add their own jobs
+    static CollectorDaemon withDefaultSinks() {
+        CollectorDaemon daemon = new CollectorDaemon();
+        daemon.register(LIVE_TRADING_URL, DataHandler.sink());
+        daemon.register(LIVE_TRADING_URL, liveData.sink());
+        daemon.register(TODAY_SHARE_PRICE_URL, dailyData.sink());
+        daemon.register(TODAY_SHARE_PRICE_URL, dailyDemo.sink());
+        return daemon;
+    }
+
+    public void register(String url, RowSink sink) {
+        sinksByUrl.computeIfAbsent(url, key -> new ArrayList<>()).add(sink);
+        sinks.add(sink);
+    }
+
+    // Ticks on wall-clock boundaries of the period; with hours given, only while that market is in session
+    public void registerJob(String name, long periodMs, MarketHours hours, TickScheduler.Job job) {
+        tickers.add(scheduler.schedule(name, periodMs, hours, job));
+    }
+
+    public void start() {
+        for (RowSink sink : sinks) {
+            try {
+                sink.init();
+                System.out.println("Tables checked/created successfully for " + sink.name() + ".");
+            } catch (Exception e) {
+                System.err.println("Error creating tables for " + sink.name() + ": " + e.getMessage());
+                scheduler.shutdown();
+                return;
+            }
+        }
+
+        for (Map.Entry<String, List<RowSink>> entry : sinksByUrl.entrySet()) {
+            List<MarketHours> hours = new ArrayList<>();
+            for (RowSink sink : entry.getValue()) {
+                hours.add(sink.marketHours());
+            }
+            String url = entry.getKey();
+            registerJob("fetch " + url, TICK_MS, MarketHours.span(hours), () -> collect(url));
+        }
+        registerJob("session", TICK_MS, null, this::checkSession);
+        registerJob("stats", STATS_INTERVAL_MS, null, () -> {
+            ConnectionPool.printAllStats();
+            WriteBehindQueue.printAllStats();
+            HttpFetcher.printStats();
+            for (TickScheduler.Ticker ticker : tickers) {
+                System.out.println(ticker.summary());
+            }
+        });
+        System.out.println("Collector started with " + sinks.size() + " sinks on " + sinksByUrl.size() + " pages.");
+    }
+
+    // One fetch of the page per tick, shared by every sink whose market is open
+    private void collect(String url) throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        List<RowSink> openSinks = new ArrayList<>();
+        for (RowSink sink : sinksByUrl.get(url)) {
+            if (sink.marketHours().isOpen(now)) {
+                openSinks.add(sink);
+            }
+        }
+        if (openSinks.isEmpty()) {
+            return;
+        }
+
+        InputStream body = HttpFetcher.fetch(url);
+        if (body == null) {
+            System.out.println("Page not modified since last fetch: " + url);
+            return;
+        }
+        List<String[]> rows = new ArrayList<>();
+        try (Reader reader = new InputStreamReader(body, StandardCharsets.UTF_8)) {
+            TableRowExtractor.extract(reader, rows::add);
+        }
+
+        for (RowSink sink : openSinks) {
+            try {
+                sink.onRows(rows);
+            } catch (Exception e) {
+                System.err.println("Error storing data for " + sink.name() + ": " + e.getMessage());
+                HttpFetcher.forgetAll();
+            }
+        }
+    }
+
+    // Day rollover and the once-a-day end-of-day work of each sink
+    private void checkSession() {
+        LocalDate today = LocalDate.now();
+        LocalTime now = LocalTime.now();
+
+        if (!today.equals(currentDate)) {
+            currentDate = today;
+            HttpFetcher.forgetAll();
+            for (RowSink sink : sinks) {
+                runSinkHook(sink, "new day", sink::onNewDay);
+            }
+        }
+
+        for (RowSink sink : sinks) {
+            if (MarketHours.isTradingDay(today) && sink.marketHours().isAfterClose(now) && !today.equals(lastCloseRun.get(sink))) {
+                lastCloseRun.put(sink, today);
+                runSinkHook(sink, "market close", sink::onMarketClose);
+            }
+        }
+    }
+
+    private static void runSinkHook(RowSink sink, String hook, TickScheduler.Job job) {
+        try {
+            job.run();
+            System.out.println("Completed " + hook + " work for " + sink.name() + ".");
+        } catch (Exception e) {
+            System.err.println("Error running " + hook + " work for " + sink.name() + ": " + e.getMessage());
+        }
+    }
+}
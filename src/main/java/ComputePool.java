@@ -0,0 +1,43 @@
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+// The one work-stealing pool for CPU-bound work (VaR simulation chunks, per-symbol batch tasks) for the life of
+// the process. Size with -Dcompute.threads=... (defaults to the number of cores).
+public class ComputePool {
+
+    private static final int PARALLELISM = Integer.getInteger("compute.threads", Runtime.getRuntime().availableProcessors());
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(PARALLELISM, pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("compute-worker-" + thread.getPoolIndex());
+        thread.setDaemon(true);
+        return thread;
+    }, null, false);
+
+    public static ForkJoinPool pool() {
+        return POOL;
+    }
+
+    public static int parallelism() {
+        return PARALLELISM;
+    }
+
+    // Runs the tasks to completion. From inside the pool they are forked so idle workers steal them (nested
+    // parallelism, e.g. a symbol task splitting its paths); from outside, the caller waits for the pool.
+    public static void invokeAll(List<ForkJoinTask<?>> tasks) throws InterruptedException, ExecutionException {
+        if (ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == POOL) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            POOL.submit(() -> ForkJoinTask.invokeAll(tasks)).get();
+        }
+    }
+
+    public static String stats() {
+        return String.format("Compute pool: parallelism=%d active=%d running=%d queuedTasks=%d steals=%d",
+                POOL.getParallelism(), POOL.getActiveThreadCount(), POOL.getRunningThreadCount(),
+                POOL.getQueuedTaskCount(), POOL.getStealCount());
+    }
+}
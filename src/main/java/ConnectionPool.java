@@ -0,0 +1,348 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ConnectionPool {
+
+    // Pool settings, overridable with -Dpool.size=... etc.
+    private static final int MAX_SIZE = Integer.getInteger("pool.size", 8);
+    private static final long BORROW_TIMEOUT_MS = Long.getLong("pool.borrowTimeoutMs", 30000);
+    private static final long VALIDATE_AFTER_MS = Long.getLong("pool.validateAfterMs", 5000);
+    private static final long IDLE_TIMEOUT_MS = Long.getLong("pool.idleTimeoutMs", 300000);
+    private static final int VALIDATION_TIMEOUT_SEC = 2;
+
+    // Connector/J statement caching (prepared statements are reused per physical connection)
+    // and rewriting of batched inserts into multi-row INSERT statements
+    private static final String DRIVER_PROPS =
+            "cachePrepStmts=true&prepStmtCacheSize=250&prepStmtCacheSqlLimit=2048&rewriteBatchedStatements=true";
+
+    private static final Map<String, ConnectionPool> POOLS = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService EVICTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "connection-pool-evictor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        if (IDLE_TIMEOUT_MS <= 0) {
+            throw new IllegalArgumentException("pool.idleTimeoutMs must be positive, was " + IDLE_TIMEOUT_MS);
+        }
+        // At least 1 ms: scheduleWithFixedDelay rejects a zero delay
+        EVICTOR.scheduleWithFixedDelay(() -> POOLS.values().forEach(ConnectionPool::evictIdle),
+                IDLE_TIMEOUT_MS, Math.max(1, IDLE_TIMEOUT_MS / 2), TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> POOLS.values().forEach(ConnectionPool::shutdown)));
+    }
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final ArrayDeque<PooledConnection> idle = new ArrayDeque<>();
+    private int total;
+    private boolean closed;
+
+    // Metrics
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong invalidated = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    private ConnectionPool(String url, String user, String password) {
+        this.url = withDriverProps(url);
+        this.user = user;
+        this.password = password;
+    }
+
+    // Drop-in replacement for DriverManager.getConnection; close() hands the connection back to the pool
+    public static Connection getConnection(String url, String user, String password) throws SQLException {
+        return forDatabase(url, user, password).borrow();
+    }
+
+    public static ConnectionPool forDatabase(String url, String user, String password) {
+        return POOLS.computeIfAbsent(url + "|" + user, key -> new ConnectionPool(url, user, password));
+    }
+
+    public static void printAllStats() {
+        POOLS.values().forEach(pool -> System.out.println(pool.stats()));
+    }
+
+    private static String withDriverProps(String url) {
+        if (url.contains("cachePrepStmts")) {
+            return url;
+        }
+        return url + (url.contains("?") ? "&" : "?") + DRIVER_PROPS;
+    }
+
+    public Connection borrow() throws SQLException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(BORROW_TIMEOUT_MS);
+        PooledConnection pooled = null;
+        boolean create = false;
+
+        synchronized (this) {
+            while (pooled == null && !create) {
+                if (closed) {
+                    throw new SQLException("Connection pool is shut down: " + url);
+                }
+                if (!idle.isEmpty()) {
+                    pooled = idle.pollLast();
+                } else if (total < MAX_SIZE) {
+                    total++;
+                    create = true;
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        timeouts.incrementAndGet();
+                        throw new SQLException("Timed out after " + BORROW_TIMEOUT_MS + " ms waiting for a connection to " + url);
+                    }
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a connection", e);
+                    }
+                }
+            }
+        }
+
+        if (create) {
+            pooled = open();
+        } else if (!isUsable(pooled)) {
+            invalidated.incrementAndGet();
+            closeQuietly(pooled.physical);
+            pooled = open();
+        }
+
+        recordWait(System.nanoTime() - start);
+        return pooled.lease();
+    }
+
+    private PooledConnection open() throws SQLException {
+        try {
+            Connection physical = DriverManager.getConnection(url, user, password);
+            created.incrementAndGet();
+            return new PooledConnection(physical);
+        } catch (SQLException e) {
+            synchronized (this) {
+                total--;
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.lastUsed < VALIDATE_AFTER_MS) {
+            return true;
+        }
+        try {
+            return pooled.physical.isValid(VALIDATION_TIMEOUT_SEC);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pooled, boolean broken) {
+        if (!broken) {
+            try {
+                if (!pooled.physical.getAutoCommit()) {
+                    pooled.physical.rollback();
+                    pooled.physical.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                broken = true;
+            }
+        }
+        pooled.lastUsed = System.currentTimeMillis();
+
+        synchronized (this) {
+            if (broken || closed) {
+                total--;
+            } else {
+                idle.addLast(pooled);
+            }
+            notifyAll();
+        }
+        if (broken || closed) {
+            closeQuietly(pooled.physical);
+        }
+    }
+
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - IDLE_TIMEOUT_MS;
+        synchronized (this) {
+            Iterator<PooledConnection> it = idle.iterator();
+            while (it.hasNext()) {
+                PooledConnection pooled = it.next();
+                if (pooled.lastUsed < cutoff) {
+                    it.remove();
+                    total--;
+                    evicted.incrementAndGet();
+                    closeQuietly(pooled.physical);
+                }
+            }
+        }
+    }
+
+    public void shutdown() {
+        synchronized (this) {
+            closed = true;
+            for (PooledConnection pooled : idle) {
+                closeQuietly(pooled.physical);
+                total--;
+            }
+            idle.clear();
+            notifyAll();
+        }
+    }
+
+    private void recordWait(long nanos) {
+        borrows.incrementAndGet();
+        waitNanos.addAndGet(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public String stats() {
+        int idleCount;
+        int totalCount;
+        synchronized (this) {
+            idleCount = idle.size();
+            totalCount = total;
+        }
+        long count = borrows.get();
+        double avgWaitMs = count == 0 ? 0 : waitNanos.get() / 1e6 / count;
+        return String.format("Pool %s: active=%d idle=%d max=%d borrows=%d avgWait=%.3fms maxWait=%.3fms created=%d evicted=%d invalidated=%d timeouts=%d",
+                url.substring(0, url.indexOf('?')), totalCount - idleCount, idleCount, MAX_SIZE, count, avgWaitMs,
+                maxWaitNanos.get() / 1e6, created.get(), evicted.get(), invalidated.get(), timeouts.get());
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private class PooledConnection {
+        final Connection physical;
+        volatile long lastUsed = System.currentTimeMillis();
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        // Each lease gets its own proxy so a stale handle cannot close a connection someone else is using
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Lease(this));
+        }
+    }
+
+    private class Lease implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean released;
+        private boolean broken;
+
+        Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        release(pooled, broken);
+                    }
+                    return null;
+                case "isClosed":
+                    return released || pooled.physical.isClosed();
+                case "unwrap":
+                case "isWrapperFor":
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + pooled.physical;
+                default:
+                    if (released) {
+                        throw new SQLException("Connection has already been returned to the pool");
+                    }
+            }
+            Object result = forward(pooled.physical, method, args);
+            if (result instanceof Statement) {
+                // A link failure mostly surfaces from execute*, so statements report to this lease as well
+                return Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                        new Class<?>[]{method.getReturnType()}, new LeasedStatement(proxy, result));
+            }
+            return result;
+        }
+
+        private Object forward(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (isFatal(cause)) {
+                    broken = true;
+                }
+                throw cause;
+            }
+        }
+
+        // SQLState class 08 = connection exception, also when wrapped (e.g. in a BatchUpdateException)
+        private boolean isFatal(Throwable t) {
+            for (; t != null; t = t.getCause()) {
+                if (t instanceof SQLException) {
+                    String state = ((SQLException) t).getSQLState();
+                    if (state != null && state.startsWith("08")) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private class LeasedStatement implements InvocationHandler {
+            private final Object connection;
+            private final Object physical;
+
+            LeasedStatement(Object connection, Object physical) {
+                this.connection = connection;
+                this.physical = physical;
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "getConnection":
+                        return connection;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return forward(physical, method, args);
+                }
+            }
+        }
+    }
+}
@@ -23,8 +23,10 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class DailyDataFetcher {
@@ -70,7 +72,7 @@ public class DailyDataFetcher {
     }
 
     private static void createTableIfNotExists() throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASS);
+        try (Connection conn = ConnectionPool.getConnection(DB_URL, DB_USER, DB_PASS);
              Statement stmt = conn.createStatement()) {
 
             String dailyTableSQL = "CREATE TABLE IF NOT EXISTS daily_data (" +
@@ -133,113 +135,56 @@ public class DailyDataFetcher {
     }
 
     private static void scrapeAndStoreData(String content, String targetDate) throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASS)) {
-            Document doc = Jsoup.parse(content);
-            for (Element row : doc.select("table.table tr")) {
-                Elements cells = row.select("td");
-
-                if (cells.size() < 2) {
-                    System.out.println("Skipping row with insufficient columns: " + row.text());
-                    continue;
-                }
-
-                String symbol = cells.get(1).text().trim();
-                if (symbol.isEmpty()) {
-                    System.out.println("Skipping row with empty symbol: " + row.text());
-                    continue;
-                }
+        LocalDate date = LocalDate.parse(targetDate);
+        Document doc = Jsoup.parse(content);
+        List<DailyRow> rows = new ArrayList<>();
+        for (Element row : doc.select("table.table tr")) {
+            Elements cells = row.select("td");
+
+            if (cells.size() < 2) {
+                System.out.println("Skipping row with insufficient columns: " + row.text());
+                continue;
+            }
 
-                while (cells.size() < 21) {
-                    cells.add(new Element("td").text("0"));
-                }
+            String symbol = cells.get(1).text().trim();
+            if (symbol.isEmpty()) {
+                System.out.println("Skipping row with empty symbol: " + row.text());
+                continue;
+            }
 
-                try {
-                    LocalDate date = LocalDate.parse(targetDate);
-                    double conf = parseDouble(cells.get(2).text());
-                    double open = parseDouble(cells.get(3).text());
-                    double high = parseDouble(cells.get(4).text());
-                    double low = parseDouble(cells.get(5).text());
-                    double close = parseDouble(cells.get(6).text());
-                    String vwap = cells.get(7).text();
-                    double vol = parseDouble(cells.get(8).text());
-                    double prevClose = parseDouble(cells.get(9).text());
-                    double turnover = parseDouble(cells.get(10).text());
-                    int trans = parseInt(cells.get(11).text());
-                    String diff = cells.get(12).text();
-                    double range = parseDouble(cells.get(13).text());
-                    String diffPerc = cells.get(14).text();
-                    double rangePerc = parseDouble(cells.get(15).text());
-                    String vwapPerc = cells.get(16).text();
-                    double days120 = parseDouble(cells.get(17).text());
-                    double days180 = parseDouble(cells.get(18).text());
-                    double weeks52High = parseDouble(cells.get(19).text());
-                    double weeks52Low = parseDouble(cells.get(20).text());
+            while (cells.size() < 21) {
+                cells.add(new Element("td").text("0"));
+            }
 
-                    String checkSql = "SELECT COUNT(*) FROM daily_data WHERE symbol = ? AND date = ?";
-                    try (PreparedStatement checkStmt = conn.prepareStatement(checkSql)) {
-                        checkStmt.setString(1, symbol);
-                        checkStmt.setObject(2, date);
-                        try (ResultSet rs = checkStmt.executeQuery()) {
-                            if (rs.next() && rs.getInt(1) > 0) {
-                                String updateSql = "UPDATE daily_data SET conf = ?, open = ?, high = ?, low = ?, close = ?, vwap = ?, vol = ?, prev_close = ?, turnover = ?, trans = ?, diff = ?, `range` = ?, diff_perc = ?, range_perc = ?, vwap_perc = ?, days_120 = ?, days_180 = ?, weeks_52_high = ?, weeks_52_low = ? WHERE symbol = ? AND date = ?";
-                                try (PreparedStatement pstmt = conn.prepareStatement(updateSql)) {
-                                    pstmt.setDouble(1, conf);
-                                    pstmt.setDouble(2, open);
-                                    pstmt.setDouble(3, high);
-                                    pstmt.setDouble(4, low);
-                                    pstmt.setDouble(5, close);
-                                    pstmt.setString(6, vwap);
-                                    pstmt.setDouble(7, vol);
-                                    pstmt.setDouble(8, prevClose);
-                                    pstmt.setDouble(9, turnover);
-                                    pstmt.setInt(10, trans);
-                                    pstmt.setString(11, diff);
-                                    pstmt.setDouble(12, range);
-                                    pstmt.setString(13, diffPerc);
-                                    pstmt.setDouble(14, rangePerc);
-                                    pstmt.setString(15, vwapPerc);
-                                    pstmt.setDouble(16, days120);
-                                    pstmt.setDouble(17, days180);
-                                    pstmt.setDouble(18, weeks52High);
-                                    pstmt.setDouble(19, weeks52Low);
-                                    pstmt.setString(20, symbol);
-                                    pstmt.setObject(21, date);
-                                    pstmt.executeUpdate();
-                                }
-                            } else {
-                                String insertSql = "INSERT INTO daily_data (date, symbol, conf, open, high, low, close, vwap, vol, prev_close, turnover, trans, diff, `range`, diff_perc, range_perc, vwap_perc, days_120, days_180, weeks_52_high, weeks_52_low) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-                                try (PreparedStatement pstmt = conn.prepareStatement(insertSql)) {
-                                    pstmt.setObject(1, date);
-                                    pstmt.setString(2, symbol);
-                                    pstmt.setDouble(3, conf);
-                                    pstmt.setDouble(4, open);
-                                    pstmt.setDouble(5, high);
-                                    pstmt.setDouble(6, low);
-                                    pstmt.setDouble(7, close);
-                                    pstmt.setString(8, vwap);
-                                    pstmt.setDouble(9, vol);
-                                    pstmt.setDouble(10, prevClose);
-                                    pstmt.setDouble(11, turnover);
-                                    pstmt.setInt(12, trans);
-                                    pstmt.setString(13, diff);
-                                    pstmt.setDouble(14, range);
-                                    pstmt.setString(15, diffPerc);
-                                    pstmt.setDouble(16, rangePerc);
-                                    pstmt.setString(17, vwapPerc);
-                                    pstmt.setDouble(18, days120);
-                                    pstmt.setDouble(19, days180);
-                                    pstmt.setDouble(20, weeks52High);
-                                    pstmt.setDouble(21, weeks52Low);
-                                    pstmt.executeUpdate();
-                                }
-                            }
-                        }
-                    }
-                } catch (Exception e) {
-                    System.err.println("Error processing row: " + e.getMessage());
-                }
+            try {
+                rows.add(new DailyRow(date, symbol,
+                        parseDouble(cells.get(2).text()),
+                        parseDouble(cells.get(3).text()),
+                        parseDouble(cells.get(4).text()),
+                        parseDouble(cells.get(5).text()),
+                        parseDouble(cells.get(6).text()),
+                        cells.get(7).text(),
+                        parseDouble(cells.get(8).text()),
+                        parseDouble(cells.get(9).text()),
+                        parseDouble(cells.get(10).text()),
+                        parseInt(cells.get(11).text()),
+                        cells.get(12).text(),
+                        parseDouble(cells.get(13).text()),
+                        cells.get(14).text(),
+                        parseDouble(cells.get(15).text()),
+                        cells.get(16).text(),
+                        parseDouble(cells.get(17).text()),
+                        parseDouble(cells.get(18).text()),
+                        parseDouble(cells.get(19).text()),
+                        parseDouble(cells.get(20).text())));
+            } catch (Exception e) {
+                System.err.println("Error processing row: " + e.getMessage());
             }
         }
+
+        try (Connection conn = ConnectionPool.getConnection(DB_URL, DB_USER, DB_PASS)) {
+            BulkUpsertWriter.upsertDailyData(conn, rows);
+        }
     }
 
     private static double parseDouble(String text) {
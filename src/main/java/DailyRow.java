@@ -0,0 +1,77 @@
+import java.time.LocalDate;
+
+public class DailyRow implements FingerprintedRow {
+    LocalDate date;
+    String symbol;
+    double conf;
+    double open;
+    double high;
+    double low;
+    double close;
+    String vwap;
+    double vol;
+    double prevClose;
+    double turnover;
+    int trans;
+    String diff;
+    double range;
+    String diffPerc;
+    double rangePerc;
+    String vwapPerc;
+    double days120;
+    double days180;
+    double weeks52High;
+    double weeks52Low;
+
+    public DailyRow(LocalDate date, String symbol, double conf, double open, double high, double low, double close,
+                    String vwap, double vol, double prevClose, double turnover, int trans, String diff, double range,
+                    String diffPerc, double rangePerc, String vwapPerc, double days120, double days180,
+                    double weeks52High, double weeks52Low) {
+        this.date = date;
+        this.symbol = symbol;
+        this.conf = conf;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.vwap = vwap;
+        this.vol = vol;
+        this.prevClose = prevClose;
+        this.turnover = turnover;
+        this.trans = trans;
+        this.diff = diff;
+        this.range = range;
+        this.diffPerc = diffPerc;
+        this.rangePerc = rangePerc;
+        this.vwapPerc = vwapPerc;
+        this.days120 = days120;
+        this.days180 = days180;
+        this.weeks52High = weeks52High;
+        this.weeks52Low = weeks52Low;
+    }
+
+    @Override
+    public String getSymbol() {
+        return symbol;
+    }
+
+    @Override
+    public long fingerprint() {
+        long h = RowFingerprintCache.seed();
+        h = RowFingerprintCache.mix(h, conf);
+        h = RowFingerprintCache.mix(h, open);
+        h = RowFingerprintCache.mix(h, high);
+        h = RowFingerprintCache.mix(h, low);
+        h = RowFingerprintCache.mix(h, close);
+        h = RowFingerprintCache.mix(h, vol);
+        h = RowFingerprintCache.mix(h, prevClose);
+        h = RowFingerprintCache.mix(h, turnover);
+        h = RowFingerprintCache.mix(h, trans);
+        h = RowFingerprintCache.mix(h, range);
+        h = RowFingerprintCache.mix(h, rangePerc);
+        h = RowFingerprintCache.mix(h, days120);
+        h = RowFingerprintCache.mix(h, days180);
+        h = RowFingerprintCache.mix(h, weeks52High);
+        return RowFingerprintCache.mix(h, weeks52Low);
+    }
+}
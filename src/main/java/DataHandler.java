@@ -1,33 +1,28 @@
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
-
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.sql.*;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Base64;
+import java.util.ArrayList;
+import java.util.List;
 
 public class DataHandler {
 
     private static final String DB_URL = "jdbc:mysql://localhost:3306/nepse_demodata";
     private static final String DB_USER = "root";
     private static final String DB_PASS = "";
-    private static final long INTERVAL = 60000;
+    private static final long INTERVAL = Long.getLong("collector.tickMs", 60000);
     private static final LocalTime START_OF_DAY = LocalTime.of(7, 45);
     private static final LocalTime END_OF_DAY = LocalTime.of(15, 15);
+    private static final MarketHours MARKET_HOURS = new MarketHours(START_OF_DAY, END_OF_DAY);
 
-    private static String lastHash = "";
+    private static final RowFingerprintCache fingerprints = new RowFingerprintCache();
+    private static final WriteBehindQueue<DailyRow> writeQueue = new WriteBehindQueue<>("DataHandler", DataHandler::writeChangedRows);
 
     public static void main(String[] args) {
         try {
@@ -41,37 +36,32 @@ public class DataHandler {
         while (true) {
             try {
                 LocalTime now = LocalTime.now();
-                if (now.isBefore(START_OF_DAY) || now.isAfter(END_OF_DAY)) {
-                    if (now.isAfter(END_OF_DAY)) {
+                if (!MARKET_HOURS.isOpen(LocalDateTime.now())) {
+                    if (MarketHours.isTradingDay(LocalDate.now()) && now.isAfter(END_OF_DAY)) {
+                        writeQueue.flush();
                         fetchAndStoreDailyData();
                         System.out.println("Daily data updated successfully at " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
-                        lastHash = "";
+                        fingerprints.clear();
+                        HttpFetcher.forgetAll();
                     }
                     System.out.println("Market is closed. Sleeping until next check.");
+                    ConnectionPool.printAllStats();
+                    WriteBehindQueue.printAllStats();
+                    HttpFetcher.printStats();
                     Thread.sleep(getSleepDuration());
                     continue;
                 }
 
                 String liveDataURL = "https://www.sharesansar.com/live-trading";
-                String content = fetchData(liveDataURL);
-                String currentHash = generateHash(content);
-
-                if (!currentHash.equals(lastHash)) {
-                    scrapeAndStoreLiveData(content);
-                    lastHash = currentHash;
-                    LocalDateTime nowDateTime = LocalDateTime.now();
-                    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-                    String formattedNow = nowDateTime.format(formatter);
-                    System.out.println("Live data updated successfully at " + formattedNow);
-                } else {
-                    System.out.println("Live data remains the same. Skipping database update.");
-                }
+                storeChangedRows(fetchData(liveDataURL));
             } catch (Exception e) {
                 System.err.println("Error fetching or storing data: " + e.getMessage());
+                HttpFetcher.forgetAll();
             }
 
             try {
-                Thread.sleep(INTERVAL);
+                // Sleeps to the next wall-clock boundary so ticks stay evenly spaced whatever the work took
+                Thread.sleep(TickScheduler.millisUntilNextBoundary(INTERVAL));
             } catch (InterruptedException e) {
                 System.err.println("Thread interrupted: " + e.getMessage());
                 Thread.currentThread().interrupt();
@@ -79,36 +69,89 @@ public class DataHandler {
         }
     }
 
-    private static long getSleepDuration() {
-        LocalTime now = LocalTime.now();
-        LocalTime nextStart = now.isBefore(START_OF_DAY) ? START_OF_DAY : START_OF_DAY.plusHours(24);
-        return now.isAfter(nextStart) ? java.time.Duration.between(nextStart, now).toMillis() : java.time.Duration.between(now, nextStart).toMillis();
+    // One tick: queues the rows whose values changed since they were last written
+    private static void storeChangedRows(List<DailyRow> rows) throws InterruptedException {
+        List<DailyRow> changedRows = fingerprints.changedRows(rows);
+
+        if (!changedRows.isEmpty()) {
+            writeQueue.submit(changedRows, System.currentTimeMillis());
+        } else {
+            System.out.println("Live data remains the same. Skipping database update.");
+        }
+        System.out.println(fingerprints.endTick());
     }
 
-    private static String fetchData(String urlStr) throws IOException {
-        StringBuilder result = new StringBuilder();
-        URL url = new URL(urlStr);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("GET");
-        conn.setRequestProperty("User-Agent", "Mozilla/5.0");
+    // Runs on the write-behind thread; fingerprints are committed only once the rows are in the database
+    private static void writeChangedRows(List<DailyRow> rows, long tickMillis) throws SQLException {
+        try {
+            scrapeAndStoreLiveData(rows);
+        } catch (SQLException e) {
+            HttpFetcher.forgetAll();
+            throw e;
+        }
+        fingerprints.commit(rows);
+        String formattedNow = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        System.out.println("Live data updated successfully at " + formattedNow);
+    }
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                result.append(line);
+    // Hooks for running this collector inside CollectorDaemon instead of its own loop
+    static RowSink sink() {
+        return new RowSink() {
+            @Override
+            public String name() {
+                return "DataHandler";
             }
-        }
-        return result.toString();
+
+            @Override
+            public MarketHours marketHours() {
+                return MARKET_HOURS;
+            }
+
+            @Override
+            public void init() throws SQLException {
+                createTablesIfNotExists();
+            }
+
+            @Override
+            public void onRows(List<String[]> rows) throws InterruptedException {
+                storeChangedRows(TableRowExtractor.mapRows(rows, DataHandler::toDailyRow));
+            }
+
+            @Override
+            public void onMarketClose() throws Exception {
+                writeQueue.flush();
+                fetchAndStoreDailyData();
+                fingerprints.clear();
+            }
+        };
+    }
+
+    private static long getSleepDuration() {
+        return MARKET_HOURS.millisUntilNextOpen(LocalDateTime.now());
     }
 
-    private static String generateHash(String content) throws NoSuchAlgorithmException {
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        byte[] hash = digest.digest(content.getBytes(StandardCharsets.UTF_8));
-        return Base64.getEncoder().encodeToString(hash);
+    private static List<DailyRow> fetchData(String urlStr) throws IOException {
+        List<DailyRow> rows = new ArrayList<>();
+        InputStream body = HttpFetcher.fetch(urlStr);
+        if (body == null) {
+            System.out.println("Page not modified since last fetch: " + urlStr);
+            return rows;
+        }
+
+        // The page is tokenized as it arrives; only the table rows are kept
+        try (Reader reader = new InputStreamReader(body, StandardCharsets.UTF_8)) {
+            TableRowExtractor.extract(reader, cells -> {
+                DailyRow row = toDailyRow(cells);
+                if (row != null) {
+                    rows.add(row);
+                }
+            });
+        }
+        return rows;
     }
 
     private static void createTablesIfNotExists() throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASS);
+        try (Connection conn = ConnectionPool.getConnection(DB_URL, DB_USER, DB_PASS);
              Statement stmt = conn.createStatement()) {
 
             String dailyTableSQL = "CREATE TABLE IF NOT EXISTS daily_data (" +
@@ -140,101 +183,56 @@ public class DataHandler {
         }
     }
 
-    private static void scrapeAndStoreLiveData(String content) throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASS)) {
-            Document doc = Jsoup.parse(content);
-            for (Element row : doc.select("table.table tr")) {
-                Elements cells = row.select("td");
-
-                if (cells.size() < 2) {
-                    System.out.println("Skipping row with insufficient columns: " + row.text());
-                    continue;
-                }
-
-                String symbol = cells.get(1).text().trim();
-                if (symbol.isEmpty()) {
-                    System.out.println("Skipping row with empty symbol: " + row.text());
-                    continue;
-                }
+    private static DailyRow toDailyRow(String[] cells) {
+        if (cells.length < 2) {
+            System.out.println("Skipping row with insufficient columns: " + TableRowExtractor.rowText(cells));
+            return null;
+        }
 
-                while (cells.size() < 21) {
-                    cells.add(new Element("td").text("0"));
-                }
+        String symbol = cells[1].trim();
+        if (symbol.isEmpty()) {
+            System.out.println("Skipping row with empty symbol: " + TableRowExtractor.rowText(cells));
+            return null;
+        }
 
-                try {
-                    LocalDate date = LocalDate.now();
-                    double ltp = parseDouble(cells.get(2).text());
-                    String pointChange = cells.get(3).text();
-                    String perChange = cells.get(4).text();
-                    double open = parseDouble(cells.get(5).text());
-                    double high = parseDouble(cells.get(6).text());
-                    double low = parseDouble(cells.get(7).text());
-                    double vol = parseDouble(cells.get(8).text());
-                    double prevClose = parseDouble(cells.get(9).text());
+        try {
+            return new DailyRow(LocalDate.now(), symbol,
+                    parseDouble(TableRowExtractor.cell(cells, 2)),
+                    parseDouble(TableRowExtractor.cell(cells, 3)),
+                    parseDouble(TableRowExtractor.cell(cells, 4)),
+                    parseDouble(TableRowExtractor.cell(cells, 5)),
+                    parseDouble(TableRowExtractor.cell(cells, 6)),
+                    TableRowExtractor.cell(cells, 7),
+                    parseDouble(TableRowExtractor.cell(cells, 8)),
+                    parseDouble(TableRowExtractor.cell(cells, 9)),
+                    parseDouble(TableRowExtractor.cell(cells, 10)),
+                    parseInt(TableRowExtractor.cell(cells, 11)),
+                    TableRowExtractor.cell(cells, 12),
+                    parseDouble(TableRowExtractor.cell(cells, 13)),
+                    TableRowExtractor.cell(cells, 14),
+                    parseDouble(TableRowExtractor.cell(cells, 15)),
+                    TableRowExtractor.cell(cells, 16),
+                    parseDouble(TableRowExtractor.cell(cells, 17)),
+                    parseDouble(TableRowExtractor.cell(cells, 18)),
+                    parseDouble(TableRowExtractor.cell(cells, 19)),
+                    parseDouble(TableRowExtractor.cell(cells, 20)));
+        } catch (NumberFormatException e) {
+            System.err.println("Skipping row due to number format error: " + e.getMessage() + " - Row data: " + TableRowExtractor.rowText(cells));
+            return null;
+        }
+    }
 
-                    String checkSql = "SELECT COUNT(*) FROM daily_data WHERE symbol = ?";
-                    try (PreparedStatement checkStmt = conn.prepareStatement(checkSql)) {
-                        checkStmt.setString(1, symbol);
-                        try (ResultSet rs = checkStmt.executeQuery()) {
-                            if (rs.next() && rs.getInt(1) > 0) {
-                                String updateSql = "UPDATE daily_data SET date = ?, ltp = ?, pointChange = ?, perChange = ?, open = ?, high = ?, low = ?, vol = ?, prev_close = ? WHERE symbol = ?";
-                                try (PreparedStatement pstmt = conn.prepareStatement(updateSql)) {
-                                    pstmt.setObject(1, date);
-                                    pstmt.setDouble(2, ltp);
-                                    pstmt.setString(3, pointChange);
-                                    pstmt.setString(4, perChange);
-                                    pstmt.setDouble(5, open);
-                                    pstmt.setDouble(6, high);
-                                    pstmt.setDouble(7, low);
-                                    pstmt.setDouble(8, vol);
-                                    pstmt.setDouble(9, prevClose);
-                                    pstmt.setString(10, symbol);
-                                    pstmt.executeUpdate();
-                                }
-                            } else {
-                                String insertSql = "INSERT INTO daily_data (date, symbol, conf, open, high, low, close, vwap, vol, prev_close, turnover, trans, diff, `range`, diff_perc, range_perc, vwap_perc, days_120, days_180, weeks_52_high, weeks_52_low) " +
-                                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-                                try (PreparedStatement pstmt = conn.prepareStatement(insertSql)) {
-                                    pstmt.setObject(1, date);
-                                    pstmt.setString(2, symbol);
-                                    pstmt.setDouble(3, parseDouble(cells.get(2).text()));
-                                    pstmt.setDouble(4, parseDouble(cells.get(3).text()));
-                                    pstmt.setDouble(5, parseDouble(cells.get(4).text()));
-                                    pstmt.setDouble(6, parseDouble(cells.get(5).text()));
-                                    pstmt.setDouble(7, parseDouble(cells.get(6).text()));
-                                    pstmt.setString(8, cells.get(7).text());
-                                    pstmt.setDouble(9, parseDouble(cells.get(8).text()));
-                                    pstmt.setDouble(10, parseDouble(cells.get(9).text()));
-                                    pstmt.setDouble(11, parseDouble(cells.get(10).text()));
-                                    pstmt.setInt(12, parseInt(cells.get(11).text()));
-                                    pstmt.setString(13, cells.get(12).text());
-                                    pstmt.setDouble(14, parseDouble(cells.get(13).text()));
-                                    pstmt.setString(15, cells.get(14).text());
-                                    pstmt.setDouble(16, parseDouble(cells.get(15).text()));
-                                    pstmt.setString(17, cells.get(16).text());
-                                    pstmt.setDouble(18, parseDouble(cells.get(17).text()));
-                                    pstmt.setDouble(19, parseDouble(cells.get(18).text()));
-                                    pstmt.setDouble(20, parseDouble(cells.get(19).text()));
-                                    pstmt.setDouble(21, parseDouble(cells.get(20).text()));
-                                    pstmt.executeUpdate();
-                                }
-                            }
-                        }
-                    }
-                } catch (NumberFormatException e) {
-                    System.err.println("Skipping row due to number format error: " + e.getMessage() + " - Row data: " + row.text());
-                } catch (SQLException e) {
-                    System.err.println("SQL error while inserting row: " + e.getMessage() + " - Row data: " + row.text());
-                }
-            }
+    private static void scrapeAndStoreLiveData(List<DailyRow> rows) throws SQLException {
+        try (Connection conn = ConnectionPool.getConnection(DB_URL, DB_USER, DB_PASS)) {
+            BulkUpsertWriter.upsertDailyData(conn, rows);
         }
     }
 
-    private static void fetchAndStoreDailyData() throws SQLException {
+    private static void fetchAndStoreDailyData() throws Exception {
         String dailyDataURL = "https://www.sharesansar.com/today-share-price";
         try {
-            String content = fetchData(dailyDataURL);
-            scrapeAndStoreLiveData(content);  // We use the same method since the structure is similar
+            List<DailyRow> rows = fetchData(dailyDataURL);
+            scrapeAndStoreLiveData(rows);  // We use the same method since the structure is similar
         } catch (IOException e) {
             System.err.println("Error fetching daily data: " + e.getMessage());
         }
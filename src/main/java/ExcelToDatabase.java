@@ -7,10 +7,13 @@ import java.sql.*;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class ExcelToDatabase {
     private static final String JDBC_URL = "jdbc:mysql://localhost:3306/nepse_data";
@@ -19,39 +22,170 @@ public class ExcelToDatabase {
     private static final String FOLDER_PATH = "D:/downloads/Historicnepse/";
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss z yyyy", Locale.ENGLISH);
 
-    public static void main(String[] args) {
-        try (Connection connection = DriverManager.getConnection(JDBC_URL, USERNAME, PASSWORD)) {
-            createTableIfNotExists(connection);
-
-            List<StockData> stockDataList = new ArrayList<>();
-            Files.list(Path.of(FOLDER_PATH))
-                    .filter(path -> path.getFileName().toString().toLowerCase().endsWith(".xlsx"))
-                    .forEach(path -> processExcelFile(path, stockDataList));
+    // -Dimport.mode=dom reads each workbook through the XSSFWorkbook DOM instead of the streaming SAX reader
+    private static final boolean STREAMING = !"dom".equalsIgnoreCase(System.getProperty("import.mode", "stream"));
 
-            insertStockData(connection, stockDataList);
+    public static void main(String[] args) {
+        try {
+            ImportPipeline.run(JDBC_URL, USERNAME, PASSWORD, Path.of(FOLDER_PATH));
             System.out.println("Data insertion complete.");
-        } catch (IOException | SQLException e) {
+        } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
-    private static void processExcelFile(Path path, List<StockData> stockDataList) {
-        try (Workbook workbook = new XSSFWorkbook(new FileInputStream(path.toFile()))) {
-            Sheet sheet = workbook.getSheetAt(0);
-            Iterator<Row> rowIterator = sheet.iterator();
-            rowIterator.next();
-
-            while (rowIterator.hasNext()) {
-                Row row = rowIterator.next();
-                try {
-                    stockDataList.add(parseStockData(row));
-                } catch (DateTimeParseException | NumberFormatException e) {
-                    System.err.println("Error parsing row: " + row.getRowNum() + " - " + e.getMessage());
+    interface StockDataSink {
+        void accept(StockData stockData) throws SQLException, InterruptedException;
+    }
+
+    static List<Path> excelFiles(Path folder) throws IOException {
+        try (Stream<Path> paths = Files.list(folder)) {
+            return paths.filter(path -> path.getFileName().toString().toLowerCase().endsWith(".xlsx"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    // Parses one workbook into the sink, the header row giving the columns; a file that cannot be read is
+    // reported and skipped, and false returned so it is not taken as fully imported
+    static boolean processExcelFile(Path path, StockDataSink sink) throws SQLException, InterruptedException {
+        try {
+            if (STREAMING) {
+                Columns[] columns = {null};
+                StreamingXlsxReader.read(path, (rowNum, cells) -> {
+                    if (columns[0] == null) {
+                        columns[0] = Columns.fromHeader(cells, path);
+                        return;
+                    }
+                    addRow(sink, rowNum, cells, columns[0]);
+                });
+            } else {
+                try (XSSFWorkbook workbook = new XSSFWorkbook(new FileInputStream(path.toFile()))) {
+                    Sheet sheet = workbook.getSheetAt(0);
+                    SheetRow cells = new SheetRow(workbook.isDate1904());
+                    Columns columns = null;
+                    for (Row row : sheet) {
+                        cells.clear();
+                        for (Cell cell : row) {
+                            setCell(cells, cell);
+                        }
+                        if (columns == null) {
+                            columns = Columns.fromHeader(cells, path);
+                        } else {
+                            addRow(sink, row.getRowNum(), cells, columns);
+                        }
+                    }
                 }
             }
-        } catch (IOException e) {
+            return true;
+        } catch (SQLException | InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
             System.err.println("Error reading Excel file: " + path.getFileName());
             e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static void addRow(StockDataSink sink, int rowNum, SheetRow cells, Columns columns) throws SQLException, InterruptedException {
+        StockData stockData;
+        try {
+            stockData = parseStockData(cells, columns);
+        } catch (DateTimeParseException | NumberFormatException e) {
+            System.err.println("Error parsing row: " + rowNum + " - " + e.getMessage());
+            return;
+        }
+        sink.accept(stockData);
+    }
+
+    // Where each StockData field sits, found by header name; a field without a recognised header keeps its
+    // column in the Historicnepse exports (symbol 1, open-close 3-6, vol 8, turnover 10, date 19)
+    static class Columns {
+        private static final String[] FIELDS = {"symbol", "open", "high", "low", "close", "vol", "turnover", "date"};
+        private static final int[] DEFAULT_COLUMNS = {1, 3, 4, 5, 6, 8, 10, 19};
+
+        final int symbol;
+        final int open;
+        final int high;
+        final int low;
+        final int close;
+        final int vol;
+        final int turnover;
+        final int date;
+
+        private Columns(int[] columns) {
+            symbol = columns[0];
+            open = columns[1];
+            high = columns[2];
+            low = columns[3];
+            close = columns[4];
+            vol = columns[5];
+            turnover = columns[6];
+            date = columns[7];
+        }
+
+        static Columns fromHeader(SheetRow header, Path path) {
+            int[] columns = new int[FIELDS.length];
+            Arrays.fill(columns, -1);
+            for (int i = 0; i < header.width(); i++) {
+                int field = field(header.text(i));
+                if (field >= 0 && columns[field] < 0) {
+                    columns[field] = i;
+                }
+            }
+            StringBuilder missing = new StringBuilder();
+            for (int field = 0; field < FIELDS.length; field++) {
+                if (columns[field] < 0) {
+                    columns[field] = DEFAULT_COLUMNS[field];
+                    missing.append(missing.length() > 0 ? ", " : "").append(FIELDS[field]).append('=').append(DEFAULT_COLUMNS[field]);
+                }
+            }
+            if (missing.length() > 0) {
+                System.out.println("No header for " + missing + " in " + path.getFileName() + "; using those default columns.");
+            }
+            return new Columns(columns);
+        }
+
+        // Header text to field index, ignoring case, spaces and punctuation ("Close Price", "vol.")
+        private static int field(String header) {
+            StringBuilder name = new StringBuilder(header.length());
+            for (int i = 0; i < header.length(); i++) {
+                char c = header.charAt(i);
+                if (Character.isLetterOrDigit(c)) {
+                    name.append(Character.toLowerCase(c));
+                }
+            }
+            switch (name.toString()) {
+                case "symbol":
+                case "stocksymbol":
+                case "scrip":
+                    return 0;
+                case "open":
+                case "openprice":
+                    return 1;
+                case "high":
+                case "highprice":
+                    return 2;
+                case "low":
+                case "lowprice":
+                    return 3;
+                case "close":
+                case "closeprice":
+                    return 4;
+                case "vol":
+                case "volume":
+                case "totaltradedquantity":
+                    return 5;
+                case "turnover":
+                case "totaltradedvalue":
+                    return 6;
+                case "date":
+                case "businessdate":
+                case "tradedate":
+                    return 7;
+                default:
+                    return -1;
+            }
         }
     }
 
@@ -77,7 +211,7 @@ public class ExcelToDatabase {
         }
     }
 
-    private static void createTableIfNotExists(Connection connection) throws SQLException {
+    static void createTableIfNotExists(Connection connection) throws SQLException {
         String createTableSQL = "CREATE TABLE IF NOT EXISTS histock_data (" +
                 "id INT AUTO_INCREMENT PRIMARY KEY," +
                 "date DATE," +
@@ -87,66 +221,168 @@ public class ExcelToDatabase {
                 "low DECIMAL(10, 2)," +
                 "close DECIMAL(10, 2)," +
                 "turnover DECIMAL(20, 2)," +
-                "vol DECIMAL(20, 2)" +
+                "vol DECIMAL(20, 2)," +
+                "UNIQUE KEY unique_symbol_date (symbol, date)" +
                 ")";
         try (Statement statement = connection.createStatement()) {
             statement.execute(createTableSQL);
         }
+        ensureUniqueKey(connection);
     }
 
-    private static StockData parseStockData(Row row) throws DateTimeParseException, NumberFormatException {
-        String dateStr = getCellValue(row.getCell(19));
-        LocalDate date = LocalDate.parse(dateStr, DATE_FORMATTER);
-        String symbol = getCellValue(row.getCell(1));
-        double open = Double.parseDouble(getCellValue(row.getCell(3)));
-        double high = Double.parseDouble(getCellValue(row.getCell(4)));
-        double low = Double.parseDouble(getCellValue(row.getCell(5)));
-        double close = Double.parseDouble(getCellValue(row.getCell(6)));
-        double turnover = Double.parseDouble(getCellValue(row.getCell(10)));
-        double vol = Double.parseDouble(getCellValue(row.getCell(8)));
+    // Tables created before the key existed hold duplicates from earlier re-runs: keep the newest row of each
+    // (symbol, date), then add the key the upserts rely on
+    private static void ensureUniqueKey(Connection connection) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM information_schema.STATISTICS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'histock_data' AND INDEX_NAME = 'unique_symbol_date'";
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet rs = statement.executeQuery(sql)) {
+                if (rs.next() && rs.getLong(1) > 0) {
+                    return;
+                }
+            }
+            System.out.println("Removing duplicate (symbol, date) rows from histock_data before adding unique_symbol_date.");
+            int removed = statement.executeUpdate("DELETE older FROM histock_data older " +
+                    "JOIN histock_data newer ON newer.symbol = older.symbol AND newer.date = older.date AND newer.id > older.id");
+            System.out.println("Removed " + removed + " duplicate rows.");
+            statement.executeUpdate("ALTER TABLE histock_data ADD UNIQUE KEY unique_symbol_date (symbol, date)");
+        }
+    }
+
+    // Typed cells of one sheet row: numbers and dates are used as read, only text cells get parsed
+    static StockData parseStockData(SheetRow cells, Columns columns) throws DateTimeParseException, NumberFormatException {
+        LocalDate date = parseDate(cells, columns.date);
+        String symbol = cells.text(columns.symbol);
+        double open = cells.number(columns.open);
+        double high = cells.number(columns.high);
+        double low = cells.number(columns.low);
+        double close = cells.number(columns.close);
+        double turnover = cells.number(columns.turnover);
+        double vol = cells.number(columns.vol);
         return new StockData(date, symbol, open, high, low, close, turnover, vol);
     }
 
-    private static String getCellValue(Cell cell) {
-        if (cell == null) {
-            return "";
+    // A date cell is its serial day number; dates stored as text may be ISO or java.util.Date.toString() output
+    private static LocalDate parseDate(SheetRow cells, int column) throws DateTimeParseException {
+        switch (cells.kind(column)) {
+            case SheetRow.DATE:
+            case SheetRow.NUMBER:
+                return LocalDate.ofEpochDay(cells.epochDay(column));
+            case SheetRow.TEXT:
+                String text = cells.text(column).trim();
+                if (text.length() == 10 && text.charAt(4) == '-') {
+                    return LocalDate.parse(text);
+                }
+                return LocalDate.parse(text, DATE_FORMATTER);
+            default:
+                throw new DateTimeParseException("Empty date cell in column " + column, "", 0);
         }
-        switch (cell.getCellType()) {
-            case STRING:
-                return cell.getStringCellValue();
+    }
+
+    private static void setCell(SheetRow cells, Cell cell) {
+        CellType type = cell.getCellType() == CellType.FORMULA ? cell.getCachedFormulaResultType() : cell.getCellType();
+        switch (type) {
             case NUMERIC:
-                if (DateUtil.isCellDateFormatted(cell)) {
-                    return cell.getDateCellValue().toString();
-                } else {
-                    return String.valueOf(cell.getNumericCellValue());
-                }
+                cells.setNumber(cell.getColumnIndex(), cell.getNumericCellValue(), DateUtil.isCellDateFormatted(cell));
+                break;
+            case STRING:
+                cells.setText(cell.getColumnIndex(), cell.getStringCellValue());
+                break;
             case BOOLEAN:
-                return String.valueOf(cell.getBooleanCellValue());
-            case FORMULA:
-                return cell.getCellFormula();
+                cells.setText(cell.getColumnIndex(), String.valueOf(cell.getBooleanCellValue()));
+                break;
             default:
-                return "";
+                break;
         }
     }
 
+    // Extra writes that must commit together with a chunk, e.g. the import manifest's progress
+    interface Checkpoint {
+        boolean pending();
+
+        void write(Connection connection) throws SQLException;
+    }
+
+    // Batches rows into one histock_data upsert transaction per chunk, so nothing accumulates across files and
+    // re-imported rows replace the stored ones instead of duplicating them. Each chunk also pulls the rollup
+    // watermark of its symbols back to their oldest date in it, so backfilled history reaches ohlcv_daily.
+    static class ChunkedInserter implements StockDataSink, AutoCloseable {
+        private static final String SQL = "INSERT INTO histock_data (date, symbol, open, high, low, close, turnover, vol) VALUES (?, ?, ?, ?, ?, ?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE open = VALUES(open), high = VALUES(high), low = VALUES(low), close = VALUES(close), " +
+                "turnover = VALUES(turnover), vol = VALUES(vol)";
+
+        private final Connection connection;
+        private final PreparedStatement statement;
+        private final boolean autoCommit;
+        private final int chunkRows;
+        private final Checkpoint checkpoint;
+        private final Map<String, LocalDate> oldestDates = new HashMap<>();
+        private int pending;
+        long inserted;
+        long commits;
+        long flushNanos;
+
+        ChunkedInserter(Connection connection, int chunkRows, Checkpoint checkpoint) throws SQLException {
+            this.connection = connection;
+            this.chunkRows = chunkRows;
+            this.checkpoint = checkpoint;
+            this.autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            this.statement = connection.prepareStatement(SQL);
+        }
+
+        @Override
+        public void accept(StockData stockData) throws SQLException {
+            statement.setDate(1, Date.valueOf(stockData.date));
+            statement.setString(2, stockData.symbol);
+            statement.setDouble(3, stockData.open);
+            statement.setDouble(4, stockData.high);
+            statement.setDouble(5, stockData.low);
+            statement.setDouble(6, stockData.close);
+            statement.setDouble(7, stockData.turnover);
+            statement.setDouble(8, stockData.vol);
+            statement.addBatch();
+            LocalDate oldest = oldestDates.get(stockData.symbol);
+            if (oldest == null || stockData.date.isBefore(oldest)) {
+                oldestDates.put(stockData.symbol, stockData.date);
+            }
+            if (++pending == chunkRows) {
+                flush();
+            }
+        }
 
-    private static void insertStockData(Connection connection, List<StockData> stockDataList) throws SQLException {
-        String sql = "INSERT INTO histock_data (date, symbol, open, high, low, close, turnover, vol) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
-
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            for (StockData stockData : stockDataList) {
-                statement.setDate(1, Date.valueOf(stockData.date));
-                statement.setString(2, stockData.symbol);
-                statement.setDouble(3, stockData.open);
-                statement.setDouble(4, stockData.high);
-                statement.setDouble(5, stockData.low);
-                statement.setDouble(6, stockData.close);
-                statement.setDouble(7, stockData.turnover);
-                statement.setDouble(8, stockData.vol);
-                statement.addBatch();
+        void flush() throws SQLException {
+            if (pending == 0 && (checkpoint == null || !checkpoint.pending())) {
+                return;
             }
+            long start = System.nanoTime();
+            try {
+                if (pending > 0) {
+                    statement.executeBatch();
+                    OhlcvStore.lowerWatermarks(connection, oldestDates);
+                }
+                if (checkpoint != null) {
+                    checkpoint.write(connection);
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+            flushNanos += System.nanoTime() - start;
+            commits++;
+            inserted += pending;
+            pending = 0;
+            oldestDates.clear();
+        }
 
-            statement.executeBatch();
+        @Override
+        public void close() throws SQLException {
+            try {
+                statement.close();
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
         }
     }
 }
@@ -0,0 +1,6 @@
+public interface FingerprintedRow {
+    String getSymbol();
+
+    // Compact 64-bit hash of the row's numeric fields
+    long fingerprint();
+}
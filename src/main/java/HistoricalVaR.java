@@ -0,0 +1,174 @@
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+
+// VaR / Expected Shortfall straight from a symbol's own daily log returns, next to the GBM model:
+// - historical(): the horizon return distribution is every overlapping days-long window of the last
+//   var.historical.window returns (too few windows and the one-day distribution is scaled by sqrt(days))
+// - bootstrap(): circular moving-block bootstrap, each path a horizon built from random blocks of
+//   var.bootstrap.blockLength consecutive days so short-range autocorrelation and volatility clusters survive;
+//   paths are resampled in parallel on the ComputePool with the same seeded chunk scheme as MonteCarloEngine
+// Both read the primitive series from ReturnSeriesCache and go through VaRCalculator.fromTail.
+// main runs the three methods side by side over every symbol into var_comparison_data, the GBM one on
+// annualized daily statistics so all three are on the scale of real daily returns (see COMPARISON).
+// Usage: HistoricalVaR [days] [confidenceLevel]   (defaults 10 0.95)
+public class HistoricalVaR {
+
+    // Settings, overridable with -Dvar.historical.window=..., -Dvar.bootstrap.blockLength=...
+    private static final int WINDOW = Integer.getInteger("var.historical.window", 500);
+    private static final int BLOCK_LENGTH = Integer.getInteger("var.bootstrap.blockLength", 5);
+    private static final int CHUNK_PATHS = 8192;
+    private static final int MIN_WINDOWS = 30;
+
+    public static void main(String[] args) throws Exception {
+        String url = "jdbc:mysql://localhost:3306/nepse_data";
+        String user = "root";
+        String password = "";
+        int days = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        double confidenceLevel = args.length > 1 ? Double.parseDouble(args[1]) : 0.95;
+
+        new VaRBatchRunner(url, user, password, COMPARISON, days, confidenceLevel).run();
+        ConnectionPool.printAllStats();
+    }
+
+    public static VaRCalculator.TailRisk historical(double[] returns, double initialStockPrice, int days, double... confidenceLevels) {
+        double[] prefix = prefixSums(returns, false);
+        int windows = returns.length - days + 1;
+        double[] horizon;
+        if (windows >= MIN_WINDOWS) {
+            horizon = new double[windows];
+            for (int s = 0; s < windows; s++) {
+                horizon[s] = prefix[s + days] - prefix[s];
+            }
+        } else {
+            double scale = Math.sqrt(days);
+            horizon = new double[returns.length];
+            for (int i = 0; i < returns.length; i++) {
+                horizon[i] = returns[i] * scale;
+            }
+        }
+        int k = Quantiles.index(maxAlpha(confidenceLevels), horizon.length);
+        Quantiles.select(horizon, k);
+        double[] tail = Arrays.copyOf(horizon, k + 1);
+        Arrays.sort(tail);
+        return VaRCalculator.fromTail(tail, horizon.length, initialStockPrice, confidenceLevels);
+    }
+
+    public static VaRCalculator.TailRisk bootstrap(double[] returns, double initialStockPrice, int days, int numSimulations,
+                                                   long seed, double... confidenceLevels) throws InterruptedException, ExecutionException {
+        int n = returns.length;
+        // Over the returns written out twice, so a block running past the end wraps to the start
+        double[] prefix = prefixSums(returns, true);
+        int blockLength = Math.max(1, Math.min(BLOCK_LENGTH, n));
+        int k = Quantiles.index(maxAlpha(confidenceLevels), numSimulations) + 1;
+
+        Map<Thread, Quantiles.TailBuffer> tails = new ConcurrentHashMap<>();
+        SplittableRandom root = new SplittableRandom(seed);
+        List<ForkJoinTask<?>> chunks = new ArrayList<>();
+        for (int from = 0; from < numSimulations; from += CHUNK_PATHS) {
+            int paths = Math.min(CHUNK_PATHS, numSimulations - from);
+            SplittableRandom random = root.split();
+            chunks.add(ForkJoinTask.adapt(() -> {
+                Quantiles.TailBuffer tail = tails.computeIfAbsent(Thread.currentThread(), thread -> new Quantiles.TailBuffer(k));
+                for (int p = 0; p < paths; p++) {
+                    double total = 0;
+                    for (int remaining = days; remaining > 0; remaining -= blockLength) {
+                        int length = Math.min(blockLength, remaining);
+                        int start = random.nextInt(n);
+                        total += prefix[start + length] - prefix[start];
+                    }
+                    tail.add(total);
+                }
+            }));
+        }
+        ComputePool.invokeAll(chunks);
+        double[] tail = Quantiles.TailBuffer.merge(new ArrayList<>(tails.values()), k);
+        return VaRCalculator.fromTail(tail, numSimulations, initialStockPrice, confidenceLevels);
+    }
+
+    private static double[] prefixSums(double[] returns, boolean twice) {
+        int n = returns.length;
+        double[] prefix = new double[(twice ? 2 * n : n) + 1];
+        for (int i = 0; i < prefix.length - 1; i++) {
+            prefix[i + 1] = prefix[i] + returns[i % n];
+        }
+        return prefix;
+    }
+
+    private static double maxAlpha(double[] confidenceLevels) {
+        double maxAlpha = 0;
+        for (double level : confidenceLevels) {
+            maxAlpha = Math.max(maxAlpha, 1 - level);
+        }
+        return maxAlpha;
+    }
+
+    // GBM, historical and bootstrap VaR/ES of one symbol at the same horizon and confidence
+    static final VaRBatchRunner.Calculation COMPARISON = new VaRBatchRunner.Calculation() {
+        @Override
+        public void createTable(String url, String user, String password) throws Exception {
+            try (Connection conn = ConnectionPool.getConnection(url, user, password);
+                 Statement stmt = conn.createStatement()) {
+
+                // Create var_comparison_data table if not exists
+                String createTableSQL = "CREATE TABLE IF NOT EXISTS var_comparison_data (" +
+                        "id INT AUTO_INCREMENT PRIMARY KEY, " +
+                        "stock_symbol VARCHAR(20), " +
+                        "date TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                        "days_of_investment INT, " +
+                        "confidence_level DOUBLE, " +
+                        "initial_stock_price DOUBLE, " +
+                        "observations INT, " +
+                        "gbm_var DOUBLE, " +
+                        "gbm_es DOUBLE, " +
+                        "historical_var DOUBLE, " +
+                        "historical_es DOUBLE, " +
+                        "bootstrap_var DOUBLE, " +
+                        "bootstrap_es DOUBLE)";
+                stmt.execute(createTableSQL);
+            }
+        }
+
+        @Override
+        public String insertSql() {
+            return "INSERT INTO var_comparison_data (stock_symbol, days_of_investment, confidence_level, initial_stock_price, observations, " +
+                    "gbm_var, gbm_es, historical_var, historical_es, bootstrap_var, bootstrap_es) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        }
+
+        @Override
+        public Object[] compute(ReturnSeriesCache.Series series, int daysOfInvestment, double confidenceLevel) throws Exception {
+            double[] returns = series.returns(WINDOW);
+            if (returns.length < 2) {
+                System.out.println("Not enough data for stock symbol: " + series.symbol);
+                return null;
+            }
+            double initialStockPrice = series.lastClose();
+            ReturnSeriesCache.Stats stats = series.stats(daysOfInvestment);
+            if (Double.isNaN(stats.meanReturn) || Double.isNaN(stats.volatility)) {
+                System.out.printf("Skipping stock symbol %s due to NaN values in calculations.%n", series.symbol);
+                return null;
+            }
+
+            // The GBM step applies DT to annual figures, so the daily statistics are annualized first; the
+            // horizon distribution is then days * daily mean and sqrt(days) * daily volatility, the same scale
+            // as the summed daily returns of historical() and bootstrap()
+            double annualMean = stats.meanReturn * MonteCarloEngine.TRADING_DAYS_PER_YEAR;
+            double annualVolatility = stats.volatility * Math.sqrt(MonteCarloEngine.TRADING_DAYS_PER_YEAR);
+            VaRCalculator.TailRisk gbm = VaRCalculator.tailRisk(initialStockPrice, annualMean, annualVolatility, daysOfInvestment,
+                    MonteCarloEngine.NUM_SIMULATIONS, confidenceLevel);
+            VaRCalculator.TailRisk historical = historical(returns, initialStockPrice, daysOfInvestment, confidenceLevel);
+            VaRCalculator.TailRisk bootstrap = bootstrap(returns, initialStockPrice, daysOfInvestment, MonteCarloEngine.NUM_SIMULATIONS,
+                    MonteCarloEngine.nextSeed(), confidenceLevel);
+            return new Object[]{series.symbol, daysOfInvestment, confidenceLevel, initialStockPrice, returns.length,
+                    gbm.var[0], gbm.expectedShortfall[0], historical.var[0], historical.expectedShortfall[0],
+                    bootstrap.var[0], bootstrap.expectedShortfall[0]};
+        }
+    };
+}
@@ -0,0 +1,180 @@
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+public class HttpFetcher {
+
+    private static final String DEFAULT_USER_AGENT = "Mozilla/5.0";
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    // One client for the whole process so connections (and HTTP/2 streams) are reused between ticks
+    private static final HttpClient CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private static final Map<String, Validators> VALIDATORS = new ConcurrentHashMap<>();
+    private static final Map<String, HostStats> STATS = new ConcurrentHashMap<>();
+
+    // Conditional GET; returns the decoded body, or null when the server answered 304 Not Modified
+    public static InputStream fetch(String url) throws IOException {
+        return fetch(url, DEFAULT_USER_AGENT, true);
+    }
+
+    public static InputStream fetch(String url, String userAgent, boolean conditional) throws IOException {
+        URI uri = URI.create(url);
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                .timeout(REQUEST_TIMEOUT)
+                .header("User-Agent", userAgent)
+                .header("Accept-Encoding", "gzip, deflate")
+                .GET();
+
+        Validators validators = conditional ? VALIDATORS.get(url) : null;
+        if (validators != null) {
+            if (validators.etag != null) {
+                request.header("If-None-Match", validators.etag);
+            }
+            if (validators.lastModified != null) {
+                request.header("If-Modified-Since", validators.lastModified);
+            }
+        }
+
+        HostStats stats = STATS.computeIfAbsent(uri.getHost(), host -> new HostStats());
+        long start = System.nanoTime();
+        HttpResponse<InputStream> response;
+        try {
+            response = CLIENT.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + url);
+        }
+
+        int status = response.statusCode();
+        if (status == 304) {
+            response.body().close();
+            stats.record(System.nanoTime() - start, 0, true);
+            return null;
+        }
+        if (status < 200 || status >= 300) {
+            response.body().close();
+            stats.record(System.nanoTime() - start, 0, false);
+            throw new IOException("HTTP " + status + " fetching " + url);
+        }
+
+        String etag = response.headers().firstValue("ETag").orElse(null);
+        String lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+        if (etag != null || lastModified != null) {
+            VALIDATORS.put(url, new Validators(etag, lastModified));
+        } else {
+            VALIDATORS.remove(url);
+        }
+
+        InputStream counted = new CountingInputStream(response.body(), stats, start);
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("").toLowerCase();
+        switch (encoding) {
+            case "gzip":
+                return new GZIPInputStream(counted, 8192);
+            case "deflate":
+                return new InflaterInputStream(counted);
+            default:
+                return counted;
+        }
+    }
+
+    // Drops stored validators so the next fetch is unconditional (e.g. after a failed write)
+    public static void forgetAll() {
+        VALIDATORS.clear();
+    }
+
+    public static void printStats() {
+        STATS.forEach((host, stats) -> System.out.println(stats.summary(host)));
+    }
+
+    private static class Validators {
+        final String etag;
+        final String lastModified;
+
+        Validators(String etag, String lastModified) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private static class HostStats {
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong notModified = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        final AtomicLong latencyNanos = new AtomicLong();
+        final AtomicLong maxLatencyNanos = new AtomicLong();
+
+        void record(long nanos, long transferred, boolean wasNotModified) {
+            requests.incrementAndGet();
+            if (wasNotModified) {
+                notModified.incrementAndGet();
+            }
+            bytes.addAndGet(transferred);
+            latencyNanos.addAndGet(nanos);
+            maxLatencyNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        String summary(String host) {
+            long count = requests.get();
+            double avgMs = count == 0 ? 0 : latencyNanos.get() / 1e6 / count;
+            return String.format("HTTP %s: requests=%d notModified=%d bytes=%d avgLatency=%.1fms maxLatency=%.1fms",
+                    host, count, notModified.get(), bytes.get(), avgMs, maxLatencyNanos.get() / 1e6);
+        }
+    }
+
+    // Counts wire bytes (before decompression) and records the full transfer time when the body is closed
+    private static class CountingInputStream extends FilterInputStream {
+        private final HostStats stats;
+        private final long start;
+        private long count;
+        private boolean recorded;
+
+        CountingInputStream(InputStream in, HostStats stats, long start) {
+            super(in);
+            this.stats = stats;
+            this.start = start;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!recorded) {
+                recorded = true;
+                stats.record(System.nanoTime() - start, count, false);
+            }
+            super.close();
+        }
+    }
+}
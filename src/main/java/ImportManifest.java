@@ -0,0 +1,149 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// import_manifest: per workbook of the historical import, its size and SHA-256 and how many of its parsed rows
+// are committed to histock_data. The rows_committed update goes into the same transaction as the rows it counts
+// (it is the ChunkedInserter's checkpoint), so after a crash a file resumes right after its last committed
+// chunk; a file whose content is unchanged and completed is skipped, a changed one is imported again from the start.
+public class ImportManifest implements ExcelToDatabase.Checkpoint {
+
+    private static final String UPSERT_SQL = "INSERT INTO import_manifest (path, size, sha256, rows_committed, completed) VALUES (?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE size = VALUES(size), sha256 = VALUES(sha256), rows_committed = VALUES(rows_committed), completed = VALUES(completed)";
+
+    // One file as found on disk, against what the manifest has for its path
+    static class Entry {
+        final String path;
+        final long size;
+        final String sha256;
+        // Parsed rows already in histock_data, to be skipped; -1 when the whole file is
+        final long skipRows;
+        // Writer thread only
+        private long rowsCommitted;
+        private long uncommitted;
+        private boolean completed;
+        private boolean dirty;
+
+        Entry(String path, long size, String sha256, long rowsCommitted, boolean completed) {
+            this.path = path;
+            this.size = size;
+            this.sha256 = sha256;
+            this.rowsCommitted = rowsCommitted;
+            this.completed = completed;
+            this.skipRows = completed ? -1 : rowsCommitted;
+        }
+    }
+
+    private final Map<String, Entry> stored = new ConcurrentHashMap<>();
+    private final List<Entry> dirty = new ArrayList<>();
+
+    private ImportManifest() {
+    }
+
+    static ImportManifest load(Connection conn) throws SQLException {
+        ImportManifest manifest = new ImportManifest();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS import_manifest (" +
+                    "path VARCHAR(255) NOT NULL PRIMARY KEY," +
+                    "size BIGINT NOT NULL," +
+                    "sha256 CHAR(64) NOT NULL," +
+                    "rows_committed BIGINT NOT NULL," +
+                    "completed BOOLEAN NOT NULL," +
+                    "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP" +
+                    ")");
+            try (ResultSet rs = stmt.executeQuery("SELECT path, size, sha256, rows_committed, completed FROM import_manifest")) {
+                while (rs.next()) {
+                    Entry entry = new Entry(rs.getString(1), rs.getLong(2), rs.getString(3), rs.getLong(4), rs.getBoolean(5));
+                    manifest.stored.put(entry.path, entry);
+                }
+            }
+        }
+        return manifest;
+    }
+
+    // Parser threads: the file's entry, carrying the stored progress only if size and content are unchanged
+    Entry open(Path file) throws IOException {
+        String path = file.toAbsolutePath().normalize().toString();
+        long size = Files.size(file);
+        String sha256 = sha256(file);
+        Entry previous = stored.get(path);
+        if (previous != null && previous.size == size && previous.sha256.equals(sha256)) {
+            return previous;
+        }
+        return new Entry(path, size, sha256, 0, false);
+    }
+
+    // Writer thread: rows of the entry handed to the inserter, counted in its next checkpoint
+    void added(Entry entry, int rows) {
+        entry.uncommitted += rows;
+        markDirty(entry);
+    }
+
+    // Writer thread: every row of the file has been handed to the inserter
+    void finished(Entry entry) {
+        entry.completed = true;
+        markDirty(entry);
+    }
+
+    private void markDirty(Entry entry) {
+        if (!entry.dirty) {
+            entry.dirty = true;
+            dirty.add(entry);
+        }
+    }
+
+    @Override
+    public boolean pending() {
+        return !dirty.isEmpty();
+    }
+
+    // Called by the inserter inside its transaction, just before the commit
+    @Override
+    public void write(Connection conn) throws SQLException {
+        BulkUpsertWriter.executeBatched(conn, UPSERT_SQL, dirty, (pstmt, entry) -> {
+            pstmt.setString(1, entry.path);
+            pstmt.setLong(2, entry.size);
+            pstmt.setString(3, entry.sha256);
+            pstmt.setLong(4, entry.rowsCommitted + entry.uncommitted);
+            pstmt.setBoolean(5, entry.completed);
+        });
+        for (Entry entry : dirty) {
+            entry.rowsCommitted += entry.uncommitted;
+            entry.uncommitted = 0;
+            entry.dirty = false;
+        }
+        dirty.clear();
+    }
+
+    static String sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
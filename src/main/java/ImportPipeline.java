@@ -0,0 +1,211 @@
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Historical backfill into histock_data as a two-stage pipeline: import.parsers threads each take whole files
+// and parse them, handing rows over in blocks through a bounded queue (import.queueBlocks) to one writer that
+// commits every import.chunkRows rows. The writer uses a pooled connection, whose rewriteBatchedStatements
+// turns each batch into multi-row INSERTs. A failed write stops the parsers; the report gives rows/s per stage
+// and how long each side waited on the queue, which shows whether parsing or the database is the bottleneck.
+// Files are checked against the ImportManifest first: completed unchanged files are skipped and partly imported
+// ones resume after their committed rows, so a re-run over the whole folder only loads what is new.
+public class ImportPipeline {
+
+    // Settings, overridable with -Dimport.parsers=..., -Dimport.queueBlocks=..., -Dimport.chunkRows=...
+    private static final int PARSERS = Integer.getInteger("import.parsers", Runtime.getRuntime().availableProcessors());
+    private static final int QUEUE_BLOCKS = Integer.getInteger("import.queueBlocks", 64);
+    private static final int CHUNK_ROWS = Integer.getInteger("import.chunkRows", 5000);
+    // Rows per queue entry, so the queue is not touched once per row
+    private static final int BLOCK_ROWS = 1000;
+
+    // Rows of one file; last marks the file's final block (possibly empty)
+    private static class Block {
+        final ImportManifest.Entry file;
+        final List<ExcelToDatabase.StockData> rows;
+        final boolean last;
+
+        Block(ImportManifest.Entry file, List<ExcelToDatabase.StockData> rows, boolean last) {
+            this.file = file;
+            this.rows = rows;
+            this.last = last;
+        }
+    }
+
+    private static final Block END = new Block(null, new ArrayList<>(), true);
+
+    private final BlockingQueue<Block> queue = new ArrayBlockingQueue<>(QUEUE_BLOCKS);
+    private ImportManifest manifest;
+    private final AtomicInteger parsedFiles = new AtomicInteger();
+    private final AtomicInteger skippedFiles = new AtomicInteger();
+    private final AtomicInteger resumedFiles = new AtomicInteger();
+    private final AtomicLong resumedRows = new AtomicLong();
+    private final AtomicLong parsedRows = new AtomicLong();
+    private final AtomicLong parseNanos = new AtomicLong();
+    private final AtomicLong parserBlockedNanos = new AtomicLong();
+    private volatile Exception failure;
+
+    public static void run(String url, String user, String password, Path folder) throws Exception {
+        new ImportPipeline().execute(url, user, password, folder);
+    }
+
+    private void execute(String url, String user, String password, Path folder) throws Exception {
+        List<Path> files = ExcelToDatabase.excelFiles(folder);
+        long start = System.nanoTime();
+
+        try (Connection conn = ConnectionPool.getConnection(url, user, password)) {
+            ExcelToDatabase.createTableIfNotExists(conn);
+            // Created (and seeded) up front: the chunks lower watermarks inside their transactions, where DDL would commit
+            OhlcvStore.createTable(conn);
+            OhlcvStore.createWatermarkTable(conn);
+            manifest = ImportManifest.load(conn);
+
+            AtomicInteger threadNumber = new AtomicInteger();
+            ExecutorService parsers = Executors.newFixedThreadPool(PARSERS, runnable -> {
+                Thread thread = new Thread(runnable, "import-parser-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            for (Path path : files) {
+                parsers.execute(() -> parse(path));
+            }
+            parsers.shutdown();
+
+            Thread closer = new Thread(() -> {
+                try {
+                    parsers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+                    queue.put(END);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "import-closer");
+            closer.setDaemon(true);
+            closer.start();
+
+            long writerIdleNanos = 0;
+            try (ExcelToDatabase.ChunkedInserter inserter = new ExcelToDatabase.ChunkedInserter(conn, CHUNK_ROWS, manifest)) {
+                try {
+                    while (true) {
+                        long waitStart = System.nanoTime();
+                        Block block = queue.take();
+                        writerIdleNanos += System.nanoTime() - waitStart;
+                        if (block == END) {
+                            break;
+                        }
+                        // Counted before each row, so a chunk committed inside accept() checkpoints exactly its rows
+                        for (ExcelToDatabase.StockData stockData : block.rows) {
+                            manifest.added(block.file, 1);
+                            inserter.accept(stockData);
+                        }
+                        if (block.last) {
+                            manifest.finished(block.file);
+                        }
+                    }
+                    inserter.flush();
+                } catch (Exception e) {
+                    failure = e;
+                    parsers.shutdownNow();
+                    throw e;
+                } finally {
+                    report(files.size(), start, inserter, writerIdleNanos);
+                }
+            }
+        }
+    }
+
+    // One file on a parser thread; rows go to the queue in blocks, waiting while the writer is behind
+    private void parse(Path path) {
+        if (failure != null) {
+            return;
+        }
+        long start = System.nanoTime();
+        BlockSink sink = null;
+        try {
+            ImportManifest.Entry file = manifest.open(path);
+            if (file.skipRows < 0) {
+                skippedFiles.incrementAndGet();
+                return;
+            }
+            if (file.skipRows > 0) {
+                resumedFiles.incrementAndGet();
+                resumedRows.addAndGet(file.skipRows);
+            }
+            sink = new BlockSink(file);
+            // An unreadable file gets no final block, so it stays incomplete and is retried next run
+            if (ExcelToDatabase.processExcelFile(path, sink)) {
+                sink.finish();
+                parsedFiles.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Error parsing " + path.getFileName() + ": " + e.getMessage());
+        } finally {
+            long blockedNanos = sink != null ? sink.blockedNanos : 0;
+            parsedRows.addAndGet(sink != null ? sink.rows : 0);
+            parserBlockedNanos.addAndGet(blockedNanos);
+            parseNanos.addAndGet(System.nanoTime() - start - blockedNanos);
+        }
+    }
+
+    private class BlockSink implements ExcelToDatabase.StockDataSink {
+        private final ImportManifest.Entry file;
+        private List<ExcelToDatabase.StockData> block = new ArrayList<>(BLOCK_ROWS);
+        private long toSkip;
+        long rows;
+        long blockedNanos;
+
+        BlockSink(ImportManifest.Entry file) {
+            this.file = file;
+            this.toSkip = file.skipRows;
+        }
+
+        // Rows already committed by an earlier run come first and are dropped; parsing is deterministic
+        @Override
+        public void accept(ExcelToDatabase.StockData stockData) throws InterruptedException {
+            if (toSkip > 0) {
+                toSkip--;
+                return;
+            }
+            block.add(stockData);
+            rows++;
+            if (block.size() == BLOCK_ROWS) {
+                put(false);
+            }
+        }
+
+        void finish() throws InterruptedException {
+            put(true);
+        }
+
+        private void put(boolean last) throws InterruptedException {
+            long start = System.nanoTime();
+            queue.put(new Block(file, block, last));
+            blockedNanos += System.nanoTime() - start;
+            block = new ArrayList<>(BLOCK_ROWS);
+        }
+    }
+
+    private void report(int files, long start, ExcelToDatabase.ChunkedInserter inserter, long writerIdleNanos) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double parseSeconds = parseNanos.get() / 1e9;
+        double writeSeconds = inserter.flushNanos / 1e9;
+        System.out.printf("Manifest: %d of %d files already imported and skipped, %d resumed past %d committed rows%n",
+                skippedFiles.get(), files, resumedFiles.get(), resumedRows.get());
+        System.out.printf("Parse: %d rows from %d/%d files on %d threads, %.0f rows/s per thread, blocked on a full queue %.1f s%n",
+                parsedRows.get(), parsedFiles.get(), files, PARSERS, parseSeconds > 0 ? parsedRows.get() / parseSeconds : 0.0,
+                parserBlockedNanos.get() / 1e9);
+        System.out.printf("Write: %d rows in %d commits of up to %d, %.0f rows/s while writing, idle waiting for rows %.1f s%n",
+                inserter.inserted, inserter.commits, CHUNK_ROWS, writeSeconds > 0 ? inserter.inserted / writeSeconds : 0.0,
+                writerIdleNanos / 1e9);
+        System.out.printf("Total: %d rows in %.1f s (%.0f rows/s)%s%n", inserter.inserted, seconds, inserter.inserted / seconds,
+                failure != null ? "; stopped after a write failure: " + failure.getMessage() : "");
+    }
+}
@@ -0,0 +1,169 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Service mode: runs the collector daemon and keeps var_data current during the session. Each tick's changed
+// liveData rows are handed to a bounded queue that holds a symbol at most once (a newer LTP replaces the
+// pending one); a worker thread re-estimates the symbol's return statistics from ReturnSeriesCache with the
+// LTP as the newest close and recomputes VaR only when the price moved by var.intraday.priceMove or the
+// volatility by var.intraday.volMove (relative) since the last published value. Results go to var_data in
+// batches of var.intraday.batchSize, or sooner once the queue runs dry.
+public class IntradayVaRService {
+
+    private static final int DAYS = Integer.getInteger("var.intraday.days", 10);
+    private static final double CONFIDENCE_LEVEL = Double.parseDouble(System.getProperty("var.intraday.confidence", "0.95"));
+    private static final double PRICE_MOVE = Double.parseDouble(System.getProperty("var.intraday.priceMove", "0.01"));
+    private static final double VOL_MOVE = Double.parseDouble(System.getProperty("var.intraday.volMove", "0.05"));
+    private static final int QUEUE_SIZE = Integer.getInteger("var.intraday.queueSize", 512);
+    private static final int BATCH_SIZE = Integer.getInteger("var.intraday.batchSize", 50);
+    private static final long STATS_INTERVAL_MS = 15 * 60000;
+
+    private static final String INSERT_SQL = "INSERT INTO var_data (stock_symbol, days_of_investment, mean_return, volatility, var, initial_stock_price, confidence_level) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private final String url;
+    private final String user;
+    private final String password;
+
+    // Symbols waiting for the worker, each once; latest holds the LTP to use for it
+    private final BlockingQueue<String> pending = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final Map<String, Double> latest = new ConcurrentHashMap<>();
+    // Worker thread only: price and volatility behind the last published VaR of each symbol
+    private final Map<String, double[]> published = new HashMap<>();
+    private final List<Object[]> batch = new ArrayList<>();
+
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong belowThreshold = new AtomicLong();
+    private final AtomicLong recomputed = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public IntradayVaRService(String url, String user, String password) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+    }
+
+    public static void main(String[] args) throws Exception {
+        IntradayVaRService service = new IntradayVaRService("jdbc:mysql://localhost:3306/nepse_data", "root", "");
+        MonteCarloVaR.createVarDataTable(service.url, service.user, service.password);
+        liveData.addTickListener(service::onTick);
+        service.start();
+
+        CollectorDaemon daemon = CollectorDaemon.withDefaultSinks();
+        daemon.registerJob("intraday var stats", STATS_INTERVAL_MS, null, () -> System.out.println(service.stats()));
+        daemon.start();
+    }
+
+    public void start() {
+        Thread worker = new Thread(this::work, "intraday-var");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // Collector thread: never blocks; a symbol already pending just gets the newer price
+    public void onTick(List<LiveRow> changedRows, long tickMillis) {
+        for (LiveRow row : changedRows) {
+            if (!(row.ltp > 0)) {
+                continue;
+            }
+            updates.incrementAndGet();
+            if (latest.put(row.symbol, row.ltp) != null) {
+                coalesced.incrementAndGet();
+            } else if (!pending.offer(row.symbol)) {
+                latest.remove(row.symbol);
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                String symbol = pending.poll(1, TimeUnit.SECONDS);
+                if (symbol != null) {
+                    Double ltp = latest.remove(symbol);
+                    if (ltp != null) {
+                        refresh(symbol, ltp);
+                    }
+                }
+                if (batch.size() >= BATCH_SIZE || (!batch.isEmpty() && pending.isEmpty())) {
+                    publish();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                System.err.println("Error refreshing intraday VaR: " + e.getMessage());
+            }
+        }
+    }
+
+    private void refresh(String symbol, double ltp) throws Exception {
+        ReturnSeriesCache.Series series = ReturnSeriesCache.get(url, user, password, symbol);
+        if (series.size() == 0) {
+            return;
+        }
+        ReturnSeriesCache.Stats stats = series.statsWith(DAYS, ltp);
+        if (Double.isNaN(stats.meanReturn) || Double.isNaN(stats.volatility)) {
+            return;
+        }
+
+        double[] last = published.get(symbol);
+        if (last != null && Math.abs(ltp / last[0] - 1) < PRICE_MOVE && Math.abs(stats.volatility / last[1] - 1) < VOL_MOVE) {
+            belowThreshold.incrementAndGet();
+            return;
+        }
+
+        double var = MonteCarloVaR.calculateVaR(ltp, stats.meanReturn, stats.volatility, stats.days, MonteCarloEngine.NUM_SIMULATIONS, CONFIDENCE_LEVEL);
+        if (Double.isNaN(var)) {
+            return;
+        }
+        published.put(symbol, new double[]{ltp, stats.volatility});
+        batch.add(new Object[]{symbol, stats.days, stats.meanReturn, stats.volatility, var, ltp, CONFIDENCE_LEVEL});
+        recomputed.incrementAndGet();
+    }
+
+    // One transaction per batch; a failed batch is dropped (and its symbols recomputed on their next move)
+    private void publish() {
+        try (Connection conn = ConnectionPool.getConnection(url, user, password)) {
+            conn.setAutoCommit(false);
+            try {
+                written.addAndGet(BulkUpsertWriter.executeBatched(conn, INSERT_SQL, batch, (pstmt, row) -> {
+                    for (int i = 0; i < row.length; i++) {
+                        pstmt.setObject(i + 1, row[i]);
+                    }
+                }));
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            failed.incrementAndGet();
+            System.err.println("Error publishing " + batch.size() + " intraday VaR rows: " + e.getMessage());
+            for (Object[] row : batch) {
+                published.remove((String) row[0]);
+            }
+        }
+        batch.clear();
+    }
+
+    public String stats() {
+        return String.format("Intraday VaR: updates=%d coalesced=%d dropped=%d pending=%d belowThreshold=%d recomputed=%d written=%d failed=%d; %s",
+                updates.get(), coalesced.get(), dropped.get(), pending.size(), belowThreshold.get(), recomputed.get(),
+                written.get(), failed.get(), ReturnSeriesCache.stats());
+    }
+}
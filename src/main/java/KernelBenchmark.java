@@ -0,0 +1,61 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Times the scalar and vector simulation kernels through MonteCarloEngine on the shared compute pool.
+// Usage: java --add-modules jdk.incubator.vector KernelBenchmark [paths] [days] [runs]   (defaults 1000000 20 5)
+// (with src/vector/java compiled in, see VectorKernel; otherwise only the scalar kernel is timed)
+// Each kernel is warmed up first; the sample mean and standard deviation of the returns are printed next to
+// the exact GBM values as a check that both kernels simulate the same distribution.
+public class KernelBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int paths = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int days = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        double meanReturn = 0.001;
+        double volatility = 0.02;
+
+        List<SimulationKernel> kernels = new ArrayList<>();
+        kernels.add(MonteCarloEngine.selectKernel("scalar"));
+        SimulationKernel vector = MonteCarloEngine.selectKernel("vector");
+        if (!vector.name().equals("scalar")) {
+            kernels.add(vector);
+        }
+
+        double exactMean = days * (meanReturn - 0.5 * volatility * volatility) * MonteCarloEngine.DT;
+        double exactStdDev = volatility * Math.sqrt(days * MonteCarloEngine.DT);
+        System.out.printf("%d paths x %d days, %d runs per kernel, %d compute threads; exact mean %.6f, std dev %.6f%n",
+                paths, days, runs, ComputePool.parallelism(), exactMean, exactStdDev);
+
+        for (SimulationKernel kernel : kernels) {
+            for (int i = 0; i < 3; i++) {
+                MonteCarloEngine.simulateReturns(meanReturn, volatility, days, paths, i, kernel);
+            }
+            long best = Long.MAX_VALUE;
+            long total = 0;
+            double[] returns = null;
+            for (int i = 0; i < runs; i++) {
+                long start = System.nanoTime();
+                returns = MonteCarloEngine.simulateReturns(meanReturn, volatility, days, paths, 42 + i, kernel);
+                long elapsed = System.nanoTime() - start;
+                best = Math.min(best, elapsed);
+                total += elapsed;
+            }
+
+            double mean = 0;
+            for (double r : returns) {
+                mean += r;
+            }
+            mean /= paths;
+            double sumSquares = 0;
+            for (double r : returns) {
+                sumSquares += (r - mean) * (r - mean);
+            }
+            double var99 = -Quantiles.quantile(returns, 0.01);
+            System.out.printf("%-7s %d lanes: best %.1f ms, average %.1f ms (%.1f M paths/s); mean %.6f, std dev %.6f, 99%% VaR %.4f%n",
+                    kernel.name(), kernel.lanes(), best / 1e6, total / 1e6 / runs, paths / (best / 1e9) / 1e6,
+                    mean, Math.sqrt(sumSquares / (paths - 1)), var99);
+        }
+        System.out.println("Default kernel: " + MonteCarloEngine.KERNEL.name());
+    }
+}
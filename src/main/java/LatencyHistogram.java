@@ -0,0 +1,55 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Fixed-bucket histogram of millisecond latencies; cheap enough to record on every tick or queue item
+public class LatencyHistogram {
+
+    private static final long[] BOUNDS_MS = {1, 5, 10, 50, 100, 500, 1000, 5000, 30000};
+
+    private final AtomicLongArray counts = new AtomicLongArray(BOUNDS_MS.length + 1);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sumMs = new AtomicLong();
+    private final AtomicLong maxMs = new AtomicLong();
+
+    public void record(long millis) {
+        int bucket = 0;
+        while (bucket < BOUNDS_MS.length && millis > BOUNDS_MS[bucket]) {
+            bucket++;
+        }
+        counts.incrementAndGet(bucket);
+        total.incrementAndGet();
+        sumMs.addAndGet(millis);
+        maxMs.accumulateAndGet(millis, Math::max);
+    }
+
+    // Upper bound of the bucket holding the given quantile
+    public long quantileUpperBoundMs(double q) {
+        long n = total.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(q * n);
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return i < BOUNDS_MS.length ? BOUNDS_MS[i] : maxMs.get();
+            }
+        }
+        return maxMs.get();
+    }
+
+    public String summary() {
+        long n = total.get();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("n=%d avg=%.1fms p50<=%dms p99<=%dms max=%dms [", n, n == 0 ? 0.0 : (double) sumMs.get() / n,
+                quantileUpperBoundMs(0.5), quantileUpperBoundMs(0.99), maxMs.get()));
+        for (int i = 0; i < counts.length(); i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(i < BOUNDS_MS.length ? "<=" + BOUNDS_MS[i] : ">" + BOUNDS_MS[BOUNDS_MS.length - 1]).append(':').append(counts.get(i));
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,44 @@
+import java.time.LocalDate;
+
+public class LiveRow implements FingerprintedRow {
+    LocalDate date;
+    String symbol;
+    double ltp;
+    String pointChange;
+    String perChange;
+    double open;
+    double high;
+    double low;
+    double vol;
+    double prevClose;
+
+    public LiveRow(LocalDate date, String symbol, double ltp, String pointChange, String perChange,
+                   double open, double high, double low, double vol, double prevClose) {
+        this.date = date;
+        this.symbol = symbol;
+        this.ltp = ltp;
+        this.pointChange = pointChange;
+        this.perChange = perChange;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.vol = vol;
+        this.prevClose = prevClose;
+    }
+
+    @Override
+    public String getSymbol() {
+        return symbol;
+    }
+
+    @Override
+    public long fingerprint() {
+        long h = RowFingerprintCache.seed();
+        h = RowFingerprintCache.mix(h, ltp);
+        h = RowFingerprintCache.mix(h, open);
+        h = RowFingerprintCache.mix(h, high);
+        h = RowFingerprintCache.mix(h, low);
+        h = RowFingerprintCache.mix(h, vol);
+        return RowFingerprintCache.mix(h, prevClose);
+    }
+}
@@ -0,0 +1,97 @@
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Trading window plus calendar: NEPSE trades Sunday to Thursday. Override the days with
+// -Dmarket.tradingDays=SUNDAY,MONDAY,... and list closures with -Dmarket.holidays=2024-10-11,2024-10-12
+public class MarketHours {
+
+    private static final Set<DayOfWeek> TRADING_DAYS = parseTradingDays(System.getProperty("market.tradingDays",
+            "SUNDAY,MONDAY,TUESDAY,WEDNESDAY,THURSDAY"));
+    private static final Set<LocalDate> HOLIDAYS = parseHolidays(System.getProperty("market.holidays", ""));
+
+    private final LocalTime open;
+    private final LocalTime close;
+
+    public MarketHours(LocalTime open, LocalTime close) {
+        this.open = open;
+        this.close = close;
+    }
+
+    // Widest window covering all of the given ones
+    public static MarketHours span(List<MarketHours> hours) {
+        LocalTime open = LocalTime.MAX;
+        LocalTime close = LocalTime.MIN;
+        for (MarketHours h : hours) {
+            open = h.open.isBefore(open) ? h.open : open;
+            close = h.close.isAfter(close) ? h.close : close;
+        }
+        return new MarketHours(open, close);
+    }
+
+    public boolean isOpen(LocalTime time) {
+        return !time.isBefore(open) && !time.isAfter(close);
+    }
+
+    public boolean isOpen(LocalDateTime time) {
+        return isTradingDay(time.toLocalDate()) && isOpen(time.toLocalTime());
+    }
+
+    public boolean isAfterClose(LocalTime time) {
+        return time.isAfter(close);
+    }
+
+    public static boolean isTradingDay(LocalDate date) {
+        return TRADING_DAYS.contains(date.getDayOfWeek()) && !HOLIDAYS.contains(date);
+    }
+
+    // Start of the next session strictly after now (today's open if it is still ahead)
+    public LocalDateTime nextOpen(LocalDateTime now) {
+        LocalDate day = now.toLocalDate();
+        if (!now.toLocalTime().isBefore(open)) {
+            day = day.plusDays(1);
+        }
+        for (int i = 0; i < 366 && !isTradingDay(day); i++) {
+            day = day.plusDays(1);
+        }
+        return day.atTime(open);
+    }
+
+    public long millisUntilNextOpen(LocalDateTime now) {
+        return Duration.between(now, nextOpen(now)).toMillis();
+    }
+
+    public LocalTime getOpen() {
+        return open;
+    }
+
+    public LocalTime getClose() {
+        return close;
+    }
+
+    private static Set<DayOfWeek> parseTradingDays(String value) {
+        Set<DayOfWeek> days = EnumSet.noneOf(DayOfWeek.class);
+        for (String day : value.split(",")) {
+            if (!day.isBlank()) {
+                days.add(DayOfWeek.valueOf(day.trim().toUpperCase()));
+            }
+        }
+        return days;
+    }
+
+    private static Set<LocalDate> parseHolidays(String value) {
+        Set<LocalDate> dates = new HashSet<>();
+        for (String date : value.split(",")) {
+            if (!date.isBlank()) {
+                dates.add(LocalDate.parse(date.trim()));
+            }
+        }
+        return dates;
+    }
+}
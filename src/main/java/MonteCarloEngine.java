@@ -0,0 +1,122 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Simulation kernel behind MonteCarloVaR. The paths are cut into fixed-size chunks, and each chunk gets its own
+// SplittableRandom split off a seeded root in chunk order, so workers share no generator state and a given
+// seed gives the same result whatever the thread count. Results go straight into one primitive array.
+public class MonteCarloEngine {
+
+    // Settings, overridable with -Dmc.simulations=1000000, -Dmc.seed=42, -Dmc.chunkSize=... (threads: see ComputePool)
+    static final int NUM_SIMULATIONS = Integer.getInteger("mc.simulations", 10000);
+    private static final Long SEED = Long.getLong("mc.seed");
+    private static final int CHUNK_SIZE = Integer.getInteger("mc.chunkSize", 8192);
+
+    // -Dmc.kernel=auto|scalar|vector; auto takes VectorKernel when the Vector API is present and has more than one lane
+    static final SimulationKernel KERNEL = selectKernel(System.getProperty("mc.kernel", "auto"));
+
+    // Time step: one trading day out of -Dmc.tradingDaysPerYear (default 174)
+    static final int TRADING_DAYS_PER_YEAR = Integer.getInteger("mc.tradingDaysPerYear", 174);
+    static final double DT = 1.0 / TRADING_DAYS_PER_YEAR;
+
+    private static final AtomicLong SEED_SEQUENCE = new AtomicLong(System.nanoTime());
+
+    // Seed for the next run: -Dmc.seed when given (every run then draws the same numbers), otherwise a fresh one
+    public static long nextSeed() {
+        return SEED != null ? SEED : SEED_SEQUENCE.getAndAdd(0x9E3779B97F4A7C15L);
+    }
+
+    static SimulationKernel selectKernel(String name) {
+        if (!name.equalsIgnoreCase("scalar")) {
+            try {
+                SimulationKernel kernel = (SimulationKernel) Class.forName("VectorKernel").getDeclaredConstructor().newInstance();
+                if (name.equalsIgnoreCase("vector") || kernel.lanes() > 1) {
+                    return kernel;
+                }
+            } catch (ReflectiveOperationException | LinkageError e) {
+                if (name.equalsIgnoreCase("vector")) {
+                    System.err.println("Vector kernel unavailable (" + e + "); compile src/vector/java and run with --add-modules jdk.incubator.vector. Using the scalar kernel.");
+                }
+            }
+        }
+        return new ScalarKernel();
+    }
+
+    // Receives each finished chunk of path returns on the worker thread that simulated it
+    interface ChunkSink {
+        void accept(double[] returns, int from, int to);
+    }
+
+    // Total log return over the horizon for each of numSimulations GBM paths; every slot is filled
+    public static double[] simulateReturns(double meanReturn, double volatility, int daysOfInvestment, int numSimulations, long seed)
+            throws InterruptedException, ExecutionException {
+        return simulateReturns(meanReturn, volatility, daysOfInvestment, numSimulations, seed, KERNEL);
+    }
+
+    static double[] simulateReturns(double meanReturn, double volatility, int daysOfInvestment, int numSimulations, long seed,
+                                    SimulationKernel kernel) throws InterruptedException, ExecutionException {
+        double[] returns = new double[numSimulations];
+        run(kernel, meanReturn, volatility, daysOfInvestment, numSimulations, seed, returns, null);
+        return returns;
+    }
+
+    // Only the smallest index(maxAlpha)+1 returns, ascending: each worker keeps its own bounded tail and the
+    // tails are merged at the end, so VaR and ES at every level up to maxAlpha need no full path array
+    public static double[] simulateTail(double meanReturn, double volatility, int daysOfInvestment, int numSimulations, long seed,
+                                        double maxAlpha) throws InterruptedException, ExecutionException {
+        int k = Quantiles.index(maxAlpha, numSimulations) + 1;
+        Map<Thread, Quantiles.TailBuffer> tails = new ConcurrentHashMap<>();
+        run(KERNEL, meanReturn, volatility, daysOfInvestment, numSimulations, seed, null, (returns, from, to) -> {
+            Quantiles.TailBuffer tail = tails.computeIfAbsent(Thread.currentThread(), thread -> new Quantiles.TailBuffer(k));
+            for (int i = from; i < to; i++) {
+                tail.add(returns[i]);
+            }
+        });
+        return Quantiles.TailBuffer.merge(new ArrayList<>(tails.values()), k);
+    }
+
+    // Feeds every return to the sketches in one pass (chunks are handed over one at a time), holding no paths
+    public static void simulateInto(double meanReturn, double volatility, int daysOfInvestment, int numSimulations, long seed,
+                                    Quantiles.P2[] sketches) throws InterruptedException, ExecutionException {
+        run(KERNEL, meanReturn, volatility, daysOfInvestment, numSimulations, seed, null, (returns, from, to) -> {
+            synchronized (sketches) {
+                for (Quantiles.P2 sketch : sketches) {
+                    for (int i = from; i < to; i++) {
+                        sketch.add(returns[i]);
+                    }
+                }
+            }
+        });
+    }
+
+    // Simulates into target when given, otherwise into a chunk-sized scratch buffer per chunk, then hands the chunk to sink
+    private static void run(SimulationKernel kernel, double meanReturn, double volatility, int daysOfInvestment, int numSimulations, long seed,
+                            double[] target, ChunkSink sink) throws InterruptedException, ExecutionException {
+        // Drift is the same every step and the days' shocks add up to one normal with sqrt(days) times the daily
+        // standard deviation, so a path needs a single draw
+        double pathDrift = daysOfInvestment * (meanReturn - 0.5 * volatility * volatility) * DT;
+        double pathDiffusion = volatility * Math.sqrt(daysOfInvestment * DT);
+
+        SplittableRandom root = new SplittableRandom(seed);
+        List<ForkJoinTask<?>> chunks = new ArrayList<>();
+        for (int from = 0; from < numSimulations; from += CHUNK_SIZE) {
+            int start = from;
+            int end = Math.min(numSimulations, from + CHUNK_SIZE);
+            SplittableRandom random = root.split();
+            chunks.add(ForkJoinTask.adapt(() -> {
+                double[] returns = target != null ? target : new double[end - start];
+                int offset = target != null ? start : 0;
+                kernel.simulate(returns, offset, offset + end - start, pathDrift, pathDiffusion, random);
+                if (sink != null) {
+                    sink.accept(returns, offset, offset + end - start);
+                }
+            }));
+        }
+        ComputePool.invokeAll(chunks);
+    }
+}
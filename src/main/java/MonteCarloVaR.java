@@ -1,10 +1,9 @@
 import java.sql.*;
 import java.util.*;
-import java.util.concurrent.*;
 
 public class MonteCarloVaR {
 
-    private static final int NUM_SIMULATIONS = 10000;
+    private static final int NUM_SIMULATIONS = MonteCarloEngine.NUM_SIMULATIONS;
 
     public static void main(String[] args) throws Exception {
         Scanner scanner = new Scanner(System.in);
@@ -25,14 +24,8 @@ public class MonteCarloVaR {
         // Check if varofall_data table is empty
         if (isTableEmpty(url, user, password)) {
             System.out.println("No data found in varofall_data table. Calculating VaR for all stock symbols.");
-            List<String> stockSymbols = getAllStockSymbols(url, user, password);
-            Random random = new Random();
-
-            for (String stockSymbol : stockSymbols) {
-                int randomDays = 10 + random.nextInt(91); // Random investment days between 10 and 100
-                double randomConfidenceLevel = 0.9 + (0.1 * random.nextDouble()); // Random confidence level between 0.9 and 1.0
-                calculateAndStoreVaR(url, user, password, stockSymbol, randomDays, randomConfidenceLevel, true);
-            }
+            new VaRBatchRunner(url, user, password).run();
+            ConnectionPool.printAllStats();
         }
 
         boolean continueCalculating = true;
@@ -49,35 +42,42 @@ public class MonteCarloVaR {
             // Calculate dynamic confidence level
             double confidenceLevel = calculateDynamicConfidenceLevel(url, user, password, stockSymbol);
 
-            // Connect to the database and retrieve historical data
-            List<Double> closePrices = getClosePrices(url, user, password, stockSymbol);
+            // Historical data, from the return series cache when this symbol was seen before
+            ReturnSeriesCache.Series series = ReturnSeriesCache.get(url, user, password, stockSymbol);
 
-            if (closePrices.isEmpty()) {
+            if (series.size() == 0) {
                 System.out.println("No data available for the given stock symbol.");
                 return;
             }
 
             // If not enough data is available, use all available data
-            if (closePrices.size() < daysOfInvestment) {
+            if (series.size() < daysOfInvestment) {
                 System.out.println("Not enough data available for the given investment horizon. Using all available data instead.");
-                daysOfInvestment = closePrices.size();
+                daysOfInvestment = series.size();
             }
 
             // Calculate the initial stock price
-            double initialStockPrice = closePrices.get(closePrices.size() - 1);
+            double initialStockPrice = series.lastClose();
             System.out.printf(blue + "Initial Stock Price: Rs.%.2f%n" + yellow, initialStockPrice);
 
             // Calculate daily mean return and daily volatility
-            double meanReturn = calculateMeanReturn(closePrices, daysOfInvestment);
-            double volatility = calculateVolatility(closePrices, daysOfInvestment, meanReturn);
+            ReturnSeriesCache.Stats stats = series.stats(daysOfInvestment);
+            double meanReturn = stats.meanReturn;
+            double volatility = stats.volatility;
 
             // Calculate VaR
-            double var = calculateVaR(initialStockPrice, meanReturn, volatility, daysOfInvestment, NUM_SIMULATIONS, confidenceLevel);
+            VaRCalculator.Estimate estimate = calculateVaREstimate(initialStockPrice, meanReturn, volatility, daysOfInvestment, NUM_SIMULATIONS, confidenceLevel);
+            double var = estimate.var;
             double varPercentage = (var / initialStockPrice) * 100;
             System.out.printf(blue + "Value at Risk (VaR) at %.2f%% confidence level: Rs.%.2f (%.2f%% of initial investment)%n", confidenceLevel * 100, var, varPercentage);
+            System.out.printf(blue + "Method: %s, standard error: Rs.%.4f over %d paths%n", estimate.method, estimate.standardError, estimate.paths);
+            VaRCalculator.TailRisk tailRisk = VaRCalculator.tailRisk(initialStockPrice, meanReturn, volatility, daysOfInvestment, NUM_SIMULATIONS, 0.90, 0.95, 0.99);
+            for (int i = 0; i < tailRisk.confidenceLevels.length; i++) {
+                System.out.printf(blue + "At %.0f%%: VaR Rs.%.2f, Expected Shortfall Rs.%.2f%n", tailRisk.confidenceLevels[i] * 100, tailRisk.var[i], tailRisk.expectedShortfall[i]);
+            }
 
             // Display all data
-            System.out.println(green + "Historical Close Prices: " + yellow + closePrices);
+            System.out.println(green + "Historical Close Prices: " + yellow + Arrays.toString(series.closes()));
             System.out.printf(green + "Mean Return: %.6f%n" + yellow, meanReturn);
             System.out.printf(green + "Volatility: %.6f%n" + yellow, volatility);
             System.out.printf(green + "Initial Stock Price: %.6f%n" + yellow, initialStockPrice);
@@ -93,11 +93,12 @@ public class MonteCarloVaR {
             }
         }
 
+        System.out.println(ReturnSeriesCache.stats());
         scanner.close();
     }
 
     public static void createVarOfAllDataTable(String url, String user, String password) throws Exception {
-        try (Connection conn = DriverManager.getConnection(url, user, password);
+        try (Connection conn = ConnectionPool.getConnection(url, user, password);
              Statement stmt = conn.createStatement()) {
 
             // Create varofall_data table if not exists
@@ -115,8 +116,27 @@ public class MonteCarloVaR {
         }
     }
 
+    public static void createVarDataTable(String url, String user, String password) throws Exception {
+        try (Connection conn = ConnectionPool.getConnection(url, user, password);
+             Statement stmt = conn.createStatement()) {
+
+            // Create var_data table if not exists
+            String createTableSQL = "CREATE TABLE IF NOT EXISTS var_data (" +
+                    "id INT AUTO_INCREMENT PRIMARY KEY, " +
+                    "stock_symbol VARCHAR(20), " +
+                    "date TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                    "days_of_investment INT, " +
+                    "mean_return DOUBLE, " +
+                    "volatility DOUBLE, " +
+                    "var DOUBLE, " +
+                    "initial_stock_price DOUBLE," +
+                    "confidence_level DOUBLE)";
+            stmt.execute(createTableSQL);
+        }
+    }
+
     public static boolean isTableEmpty(String url, String user, String password) throws Exception {
-        try (Connection conn = DriverManager.getConnection(url, user, password);
+        try (Connection conn = ConnectionPool.getConnection(url, user, password);
              Statement stmt = conn.createStatement()) {
 
             String query = "SELECT COUNT(*) FROM varofall_data";
@@ -131,41 +151,30 @@ public class MonteCarloVaR {
     public static List<String> getAllStockSymbols(String url, String user, String password) throws Exception {
         List<String> stockSymbols = new ArrayList<>();
 
-        try (Connection conn = DriverManager.getConnection(url, user, password);
-             Statement stmt = conn.createStatement()) {
-
-            String query = "SHOW TABLES LIKE 'daily_data_%'";
-            ResultSet rs = stmt.executeQuery(query);
-            while (rs.next()) {
-                String tableName = rs.getString(1);
-                String stockSymbol = tableName.replace("daily_data_", "");
-                stockSymbols.add(stockSymbol);
-            }
+        try (Connection conn = ConnectionPool.getConnection(url, user, password)) {
+            stockSymbols.addAll(OhlcvStore.symbols(conn));
         }
 
         return stockSymbols;
     }
 
     public static void calculateAndStoreVaR(String url, String user, String password, String stockSymbol, int daysOfInvestment, double confidenceLevel, boolean forAll) throws Exception {
-        // Connect to the database and retrieve historical data
-        List<Double> closePrices = getClosePrices(url, user, password, stockSymbol);
+        // Historical data, from the return series cache when this symbol was seen before
+        ReturnSeriesCache.Series series = ReturnSeriesCache.get(url, user, password, stockSymbol);
 
-        if (closePrices.isEmpty()) {
+        if (series.size() == 0) {
             System.out.println("No data available for the given stock symbol: " + stockSymbol);
             return;
         }
 
-        // If not enough data is available, use all available data
-        if (closePrices.size() < daysOfInvestment) {
-            daysOfInvestment = closePrices.size();
-        }
-
         // Calculate the initial stock price
-        double initialStockPrice = closePrices.get(closePrices.size() - 1);
+        double initialStockPrice = series.lastClose();
 
-        // Calculate daily mean return and daily volatility
-        double meanReturn = calculateMeanReturn(closePrices, daysOfInvestment);
-        double volatility = calculateVolatility(closePrices, daysOfInvestment, meanReturn);
+        // Calculate daily mean return and daily volatility (the horizon is capped at the available history)
+        ReturnSeriesCache.Stats stats = series.stats(daysOfInvestment);
+        daysOfInvestment = stats.days;
+        double meanReturn = stats.meanReturn;
+        double volatility = stats.volatility;
 
         // Calculate VaR
         double var = calculateVaR(initialStockPrice, meanReturn, volatility, daysOfInvestment, NUM_SIMULATIONS, confidenceLevel);
@@ -187,14 +196,8 @@ public class MonteCarloVaR {
     public static List<Double> getClosePrices(String url, String user, String password, String stockSymbol) throws Exception {
         List<Double> closePrices = new ArrayList<>();
 
-        try (Connection conn = DriverManager.getConnection(url, user, password);
-             Statement stmt = conn.createStatement()) {
-            String query = "SELECT close FROM daily_data_" + stockSymbol;
-            ResultSet rs = stmt.executeQuery(query);
-
-            while (rs.next()) {
-                closePrices.add(rs.getDouble("close"));
-            }
+        try (Connection conn = ConnectionPool.getConnection(url, user, password)) {
+            closePrices.addAll(OhlcvStore.closePrices(conn, stockSymbol));
         }
 
         return closePrices;
@@ -221,74 +224,20 @@ public class MonteCarloVaR {
 
     public static double calculateVaR(double initialStockPrice, double meanReturn, double volatility, int daysOfInvestment,
                                       int numSimulations, double confidenceLevel) throws Exception {
-        int numThreads = Runtime.getRuntime().availableProcessors();
-        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
-        Future<double[]>[] futures = new Future[numThreads];
-
-        int simulationsPerThread = numSimulations / numThreads;
-        Random random = new Random();
-
-        for (int i = 0; i < numThreads; i++) {
-            futures[i] = executor.submit(new Callable<double[]>() {
-                @Override
-                public double[] call() {
-                    double[] simulatedReturns = new double[simulationsPerThread];
-                    for (int j = 0; j < simulationsPerThread; j++) {
-                        simulatedReturns[j] = simulateReturn(initialStockPrice, meanReturn, volatility, daysOfInvestment, random);
-                    }
-                    return simulatedReturns;
-                }
-            });
-        }
-
-        double[] allSimulatedReturns = new double[numSimulations];
-        int index = 0;
-
-        for (Future<double[]> future : futures) {
-            double[] simulatedReturns = future.get();
-            System.arraycopy(simulatedReturns, 0, allSimulatedReturns, index, simulatedReturns.length);
-            index += simulatedReturns.length;
-        }
-
-        executor.shutdown();
-
-        Arrays.sort(allSimulatedReturns);
-        int varIndex = (int) ((1 - confidenceLevel) * numSimulations);
-        double varReturn = allSimulatedReturns[varIndex];
-
-        return initialStockPrice * -varReturn;
+        return calculateVaREstimate(initialStockPrice, meanReturn, volatility, daysOfInvestment, numSimulations, confidenceLevel).var;
     }
 
-    private static double simulateReturn(double initialStockPrice, double meanReturn, double volatility, int daysOfInvestment, Random random) {
-        double dt = 1.0 / 174;
-        double totalReturn = 0;
-
-        for (int i = 0; i < daysOfInvestment; i++) {
-            double drift = (meanReturn - 0.5 * Math.pow(volatility, 2)) * dt;
-            double shock = volatility * Math.sqrt(dt) * random.nextGaussian();
-            totalReturn += drift + shock;
-        }
-
-        return totalReturn;
+    // VaR with its standard error, by the method chosen with -Dvar.method (see VaRCalculator.Method)
+    public static VaRCalculator.Estimate calculateVaREstimate(double initialStockPrice, double meanReturn, double volatility, int daysOfInvestment,
+                                                              int numSimulations, double confidenceLevel) throws Exception {
+        return VaRCalculator.estimate(VaRCalculator.DEFAULT_METHOD, initialStockPrice, meanReturn, volatility, daysOfInvestment,
+                numSimulations, confidenceLevel);
     }
 
     private static void storeVaRData(String url, String user, String password, String stockSymbol, int daysOfInvestment,
                                      double meanReturn, double volatility, double var, double initialStockPrice, double confidenceLevel) throws Exception {
-        try (Connection conn = DriverManager.getConnection(url, user, password);
-             Statement stmt = conn.createStatement()) {
-
-            // Create table if not exists
-            String createTableSQL = "CREATE TABLE IF NOT EXISTS var_data (" +
-                    "id INT AUTO_INCREMENT PRIMARY KEY, " +
-                    "stock_symbol VARCHAR(20), " +
-                    "date TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
-                    "days_of_investment INT, " +
-                    "mean_return DOUBLE, " +
-                    "volatility DOUBLE, " +
-                    "var DOUBLE, " +
-                    "initial_stock_price DOUBLE," +
-                    "confidence_level DOUBLE)";
-            stmt.execute(createTableSQL);
+        createVarDataTable(url, user, password);
+        try (Connection conn = ConnectionPool.getConnection(url, user, password)) {
 
             // Prepare SQL insert statement
             String insertSQL = "INSERT INTO var_data (stock_symbol, days_of_investment, mean_return, volatility, var, initial_stock_price, confidence_level) " +
@@ -308,7 +257,7 @@ public class MonteCarloVaR {
 
     private static void storeVarOfAllData(String url, String user, String password, String stockSymbol, int daysOfInvestment,
                                           double meanReturn, double volatility, double var, double initialStockPrice, double confidenceLevel) throws Exception {
-        try (Connection conn = DriverManager.getConnection(url, user, password);
+        try (Connection conn = ConnectionPool.getConnection(url, user, password);
              Statement stmt = conn.createStatement()) {
 
             // Create table if not exists
@@ -343,7 +292,7 @@ public class MonteCarloVaR {
     private static double calculateDynamicConfidenceLevel(String url, String user, String password, String stockSymbol) throws Exception {
         List<Double> confidenceLevels = new ArrayList<>();
 
-        try (Connection conn = DriverManager.getConnection(url, user, password);
+        try (Connection conn = ConnectionPool.getConnection(url, user, password);
              PreparedStatement pstmt = conn.prepareStatement("SELECT confidence_level FROM varofall_data WHERE stock_symbol = ?")) {
             pstmt.setString(1, stockSymbol);
             ResultSet rs = pstmt.executeQuery();
@@ -3,6 +3,7 @@ import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 import java.io.IOException;
+import java.io.InputStream;
 import java.sql.*;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
@@ -38,11 +39,13 @@ public class NepseScraper {
     private static Document fetchDocument(String url) throws IOException {
         Random random = new Random();
         String userAgent = USER_AGENTS[random.nextInt(USER_AGENTS.length)];
-        return Jsoup.connect(url).userAgent(userAgent).get();
+        try (InputStream body = HttpFetcher.fetch(url, userAgent, false)) {
+            return Jsoup.parse(body, null, url);
+        }
     }
 
     private static void createTablesIfNotExists() throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASS);
+        try (Connection conn = ConnectionPool.getConnection(DB_URL, DB_USER, DB_PASS);
              Statement stmt = conn.createStatement()) {
 
             String historicalTableSQL = "CREATE TABLE IF NOT EXISTS historical_data (" +
@@ -71,7 +74,7 @@ public class NepseScraper {
     }
 
     private static void scrapeAndStoreData(Document doc, String tableName, boolean isHistorical) throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASS)) {
+        try (Connection conn = ConnectionPool.getConnection(DB_URL, DB_USER, DB_PASS)) {
             for (Element row : doc.select("table.table tr")) {
                 Elements cells = row.select("td");
 
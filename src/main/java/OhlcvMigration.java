@@ -0,0 +1,121 @@
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// One-off copy of the per-symbol daily_data_<symbol> tables into ohlcv_daily.
+// Usage: OhlcvMigration [jdbcUrl] [user] [password] [--drop]
+// Table names only keep a lower-cased, underscore-normalized symbol, so the original symbol is looked up
+// in histock_data; --drop removes each old table once its row count has been verified in the new one.
+public class OhlcvMigration {
+
+    public static void main(String[] args) throws SQLException {
+        List<String> positional = new ArrayList<>();
+        boolean drop = false;
+        for (String arg : args) {
+            if (arg.equals("--drop")) {
+                drop = true;
+            } else {
+                positional.add(arg);
+            }
+        }
+        String url = positional.size() > 0 ? positional.get(0) : "jdbc:mysql://localhost:3306/nepse_data";
+        String user = positional.size() > 1 ? positional.get(1) : "root";
+        String password = positional.size() > 2 ? positional.get(2) : "";
+
+        try (Connection conn = ConnectionPool.getConnection(url, user, password)) {
+            OhlcvStore.createTable(conn);
+            Map<String, String> symbolsByTable = originalSymbols(conn);
+            List<String> tables = legacyTables(conn);
+            System.out.println("Migrating " + tables.size() + " per-symbol tables into " + OhlcvStore.TABLE + ".");
+
+            long start = System.nanoTime();
+            long totalRows = 0;
+            int migrated = 0;
+            for (String table : tables) {
+                String symbol = symbolsByTable.get(table);
+                if (symbol == null) {
+                    symbol = table.substring("daily_data_".length()).toUpperCase();
+                    System.out.println("No histock_data symbol for " + table + "; using " + symbol + ".");
+                }
+                try {
+                    long rows = migrateTable(conn, table, symbol);
+                    totalRows += rows;
+                    migrated++;
+                    if (drop) {
+                        dropIfComplete(conn, table, symbol, rows);
+                    }
+                } catch (SQLException e) {
+                    System.err.println("Error migrating " + table + ": " + e.getMessage());
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Migrated %d/%d tables, %d rows in %.1f s%n", migrated, tables.size(), totalRows, seconds);
+        }
+    }
+
+    private static List<String> legacyTables(Connection conn) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SHOW TABLES LIKE 'daily\\_data\\_%'")) {
+            while (rs.next()) {
+                tables.add(rs.getString(1).toLowerCase());
+            }
+        }
+        return tables;
+    }
+
+    // Normalized table name -> symbol as it appears in histock_data
+    private static Map<String, String> originalSymbols(Connection conn) throws SQLException {
+        Map<String, String> symbols = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT DISTINCT symbol FROM histock_data")) {
+            while (rs.next()) {
+                String symbol = rs.getString(1);
+                symbols.putIfAbsent(OhlcvStore.legacyTableName(symbol), symbol);
+            }
+        } catch (SQLException e) {
+            System.err.println("Could not read symbols from histock_data: " + e.getMessage());
+        }
+        return symbols;
+    }
+
+    // Copies one table in a single INSERT ... SELECT; returns the source row count
+    private static long migrateTable(Connection conn, String table, String symbol) throws SQLException {
+        String sql = "INSERT INTO " + OhlcvStore.TABLE + " (symbol, date, open, high, low, close, volume, turnover) " +
+                "SELECT ?, date, open, high, low, close, volume, turnover FROM " + table + " " +
+                "ON DUPLICATE KEY UPDATE open = VALUES(open), high = VALUES(high), low = VALUES(low), close = VALUES(close), " +
+                "volume = VALUES(volume), turnover = VALUES(turnover)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, symbol);
+            pstmt.executeUpdate();
+        }
+        long rows = count(conn, "SELECT COUNT(*) FROM " + table, null);
+        System.out.println("Migrated " + table + " -> " + symbol + " (" + rows + " rows)");
+        return rows;
+    }
+
+    private static void dropIfComplete(Connection conn, String table, String symbol, long sourceRows) throws SQLException {
+        long copied = count(conn, "SELECT COUNT(*) FROM " + OhlcvStore.TABLE + " WHERE symbol = ?", symbol);
+        if (copied < sourceRows) {
+            System.err.println("Keeping " + table + ": only " + copied + " of " + sourceRows + " rows found in " + OhlcvStore.TABLE + ".");
+            return;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DROP TABLE " + table);
+        }
+        System.out.println("Dropped " + table + ".");
+    }
+
+    private static long count(Connection conn, String sql, String param) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            if (param != null) {
+                pstmt.setString(1, param);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,290 @@
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Daily OHLCV history of every symbol in one table clustered on (symbol, date), replacing the
+// per-symbol daily_data_<symbol> tables: a symbol's history is one primary-key range scan and
+// cross-symbol work is a single query instead of one statement per table.
+public class OhlcvStore {
+
+    static final String TABLE = "ohlcv_daily";
+    private static final String WATERMARK_TABLE = "ohlcv_watermark";
+    // Symbols per rollup statement, overridable with -Drollup.batchSymbols=...
+    private static final int ROLLUP_BATCH_SYMBOLS = Integer.getInteger("rollup.batchSymbols", 100);
+
+    public static void createTable(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS " + TABLE + " (" +
+                    "symbol VARCHAR(50) NOT NULL," +
+                    "date DATE NOT NULL," +
+                    "open DOUBLE," +
+                    "high DOUBLE," +
+                    "low DOUBLE," +
+                    "close DOUBLE," +
+                    "volume DOUBLE," +
+                    "turnover DOUBLE," +
+                    "PRIMARY KEY (symbol, date)" +
+                    ") ENGINE=InnoDB");
+        }
+    }
+
+    // End-of-day rollup of histock_data into the store. Each symbol's high-water mark in ohlcv_watermark
+    // limits the copy to dates from its last rolled-up day on (that day is re-copied to pick up late
+    // corrections), and symbols are moved in chunks with one set-based INSERT ... SELECT per chunk.
+    // Writers of older histock_data rows (the historical import) pull the mark back with lowerWatermarks.
+    public static int rollupFromHistock(Connection conn) throws SQLException {
+        long start = System.nanoTime();
+        createWatermarkTable(conn);
+        ensureHistockIndex(conn);
+
+        List<String> symbols = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT DISTINCT symbol FROM histock_data")) {
+            while (rs.next()) {
+                symbols.add(rs.getString(1));
+            }
+        }
+
+        int batches = (symbols.size() + ROLLUP_BATCH_SYMBOLS - 1) / ROLLUP_BATCH_SYMBOLS;
+        int total = 0;
+        for (int b = 0; b < batches; b++) {
+            List<String> batch = symbols.subList(b * ROLLUP_BATCH_SYMBOLS, Math.min(symbols.size(), (b + 1) * ROLLUP_BATCH_SYMBOLS));
+            total += rollupBatch(conn, batch);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Rollup batch %d/%d: %d symbols, %d rows so far (%.0f rows/s)%n",
+                    b + 1, batches, batch.size(), total, seconds > 0 ? total / seconds : 0.0);
+        }
+        System.out.println("Rolled up histock_data into " + TABLE + ": " + total + " rows affected for " + symbols.size() +
+                " symbols in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return total;
+    }
+
+    // Copies one chunk of symbols and advances their watermarks in the same transaction
+    private static int rollupBatch(Connection conn, List<String> symbols) throws SQLException {
+        String in = String.join(", ", Collections.nCopies(symbols.size(), "?"));
+        String copySql = "INSERT INTO " + TABLE + " (symbol, date, open, high, low, close, volume, turnover) " +
+                "SELECT h.symbol, h.date, h.open, h.high, h.low, h.close, h.vol, h.turnover FROM histock_data h " +
+                "LEFT JOIN " + WATERMARK_TABLE + " w ON w.symbol = h.symbol " +
+                "WHERE h.symbol IN (" + in + ") AND (w.last_date IS NULL OR h.date >= w.last_date) " +
+                "ON DUPLICATE KEY UPDATE open = VALUES(open), high = VALUES(high), low = VALUES(low), close = VALUES(close), " +
+                "volume = VALUES(volume), turnover = VALUES(turnover)";
+        // Taken from what actually landed in the store, so rows inserted into histock_data meanwhile are not skipped
+        String watermarkSql = "INSERT INTO " + WATERMARK_TABLE + " (symbol, last_date) " +
+                "SELECT symbol, MAX(date) FROM " + TABLE + " WHERE symbol IN (" + in + ") GROUP BY symbol " +
+                "ON DUPLICATE KEY UPDATE last_date = GREATEST(last_date, VALUES(last_date))";
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement copy = conn.prepareStatement(copySql);
+             PreparedStatement watermark = conn.prepareStatement(watermarkSql)) {
+            for (int i = 0; i < symbols.size(); i++) {
+                copy.setString(i + 1, symbols.get(i));
+                watermark.setString(i + 1, symbols.get(i));
+            }
+            int rows = copy.executeUpdate();
+            watermark.executeUpdate();
+            conn.commit();
+            return rows;
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    // Moves each symbol's watermark back to the given date if it is past it, so the next rollup re-copies from
+    // there; run in the transaction that writes those histock_data rows so neither lands without the other
+    static void lowerWatermarks(Connection conn, Map<String, LocalDate> oldestDates) throws SQLException {
+        String sql = "UPDATE " + WATERMARK_TABLE + " SET last_date = ? WHERE symbol = ? AND last_date > ?";
+        BulkUpsertWriter.executeBatched(conn, sql, new ArrayList<>(oldestDates.entrySet()), (pstmt, entry) -> {
+            Date date = Date.valueOf(entry.getValue());
+            pstmt.setDate(1, date);
+            pstmt.setString(2, entry.getKey());
+            pstmt.setDate(3, date);
+        });
+    }
+
+    // A new watermark table is seeded from the store, so history that is already there (e.g. migrated) isn't copied again
+    static void createWatermarkTable(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS " + WATERMARK_TABLE + " (" +
+                    "symbol VARCHAR(50) NOT NULL PRIMARY KEY," +
+                    "last_date DATE NOT NULL," +
+                    "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP" +
+                    ")");
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + WATERMARK_TABLE)) {
+                if (rs.next() && rs.getLong(1) > 0) {
+                    return;
+                }
+            }
+            stmt.executeUpdate("INSERT IGNORE INTO " + WATERMARK_TABLE + " (symbol, last_date) " +
+                    "SELECT symbol, MAX(date) FROM " + TABLE + " GROUP BY symbol");
+        }
+    }
+
+    // The per-chunk scans need histock_data indexed on (symbol, date); added once if no index starts with those columns
+    private static void ensureHistockIndex(Connection conn) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM information_schema.STATISTICS s1 " +
+                "JOIN information_schema.STATISTICS s2 ON s2.TABLE_SCHEMA = s1.TABLE_SCHEMA AND s2.TABLE_NAME = s1.TABLE_NAME " +
+                "AND s2.INDEX_NAME = s1.INDEX_NAME AND s2.SEQ_IN_INDEX = 2 AND s2.COLUMN_NAME = 'date' " +
+                "WHERE s1.TABLE_SCHEMA = DATABASE() AND s1.TABLE_NAME = 'histock_data' AND s1.SEQ_IN_INDEX = 1 AND s1.COLUMN_NAME = 'symbol'";
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery(sql)) {
+                if (rs.next() && rs.getLong(1) > 0) {
+                    return;
+                }
+            }
+            System.out.println("Adding index idx_histock_symbol_date on histock_data (symbol, date).");
+            stmt.executeUpdate("CREATE INDEX idx_histock_symbol_date ON histock_data (symbol, date)");
+        }
+    }
+
+    // Latest row of the symbol as column name -> value; empty when the symbol has no history
+    public static Map<String, Object> lastRow(Connection conn, String symbol) throws SQLException {
+        Map<String, Object> data = new HashMap<>();
+        String sql = "SELECT * FROM " + TABLE + " WHERE symbol = ? ORDER BY date DESC LIMIT 1";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, symbol);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    ResultSetMetaData rsmd = rs.getMetaData();
+                    for (int i = 1; i <= rsmd.getColumnCount(); i++) {
+                        data.put(rsmd.getColumnName(i), rs.getObject(i));
+                    }
+                }
+            }
+        }
+        return data;
+    }
+
+    public static List<String> symbols(Connection conn) throws SQLException {
+        List<String> symbols = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT DISTINCT symbol FROM " + TABLE + " ORDER BY symbol")) {
+            while (rs.next()) {
+                symbols.add(rs.getString(1));
+            }
+        }
+        return symbols;
+    }
+
+    // Close prices of the symbol, oldest first
+    public static List<Double> closePrices(Connection conn, String symbol) throws SQLException {
+        List<Double> closePrices = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT close FROM " + TABLE + " WHERE symbol = ? ORDER BY date")) {
+            pstmt.setString(1, symbol);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    closePrices.add(rs.getDouble(1));
+                }
+            }
+        }
+        return closePrices;
+    }
+
+    interface CloseConsumer {
+        void accept(LocalDate date, double close);
+    }
+
+    // Closes of the symbol dated on or after the given day (all of them when null), oldest first; returns the count
+    public static int closesFrom(Connection conn, String symbol, LocalDate from, CloseConsumer consumer) throws SQLException {
+        String sql = "SELECT date, close FROM " + TABLE + " WHERE symbol = ?" + (from != null ? " AND date >= ?" : "") + " ORDER BY date";
+        int count = 0;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, symbol);
+            if (from != null) {
+                pstmt.setDate(2, Date.valueOf(from));
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(rs.getDate(1).toLocalDate(), rs.getDouble(2));
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    interface DatedCloseConsumer {
+        void accept(String symbol, LocalDate date, double close);
+    }
+
+    // Closes of the given symbols on the last `dates` dates any of them traded, ordered by date; returns the row count
+    public static int recentCloses(Connection conn, List<String> symbols, int dates, DatedCloseConsumer consumer) throws SQLException {
+        String in = String.join(", ", Collections.nCopies(symbols.size(), "?"));
+        LocalDate from = null;
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT DISTINCT date FROM " + TABLE + " WHERE symbol IN (" + in + ") ORDER BY date DESC LIMIT ?")) {
+            int i = 1;
+            for (String symbol : symbols) {
+                pstmt.setString(i++, symbol);
+            }
+            pstmt.setInt(i, dates);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    from = rs.getDate(1).toLocalDate();
+                }
+            }
+        }
+        if (from == null) {
+            return 0;
+        }
+
+        int count = 0;
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT symbol, date, close FROM " + TABLE + " WHERE symbol IN (" + in + ") AND date >= ? ORDER BY date")) {
+            int i = 1;
+            for (String symbol : symbols) {
+                pstmt.setString(i++, symbol);
+            }
+            pstmt.setDate(i, Date.valueOf(from));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(rs.getString(1), rs.getDate(2).toLocalDate(), rs.getDouble(3));
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    interface SeriesConsumer {
+        void accept(ReturnSeriesCache.Series series) throws Exception;
+    }
+
+    // Streams every symbol's closes (oldest first) in one scan of the primary key, handing each series over
+    // as soon as the next symbol starts; the connection is busy streaming until this returns
+    public static int forEachCloseSeries(Connection conn, SeriesConsumer consumer) throws Exception {
+        int count = 0;
+        try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(Integer.MIN_VALUE);  // Connector/J: stream rows instead of buffering the whole result
+            try (ResultSet rs = stmt.executeQuery("SELECT symbol, date, close FROM " + TABLE + " ORDER BY symbol, date")) {
+                ReturnSeriesCache.Series series = null;
+                while (rs.next()) {
+                    String symbol = rs.getString(1);
+                    if (series == null || !symbol.equals(series.symbol)) {
+                        if (series != null) {
+                            consumer.accept(series);
+                            count++;
+                        }
+                        series = new ReturnSeriesCache.Series(symbol);
+                    }
+                    series.append(rs.getDate(2).toLocalDate(), rs.getDouble(3));
+                }
+                if (series != null) {
+                    consumer.accept(series);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    // Name the old per-symbol layout used for the symbol
+    static String legacyTableName(String symbol) {
+        return "daily_data_" + symbol.replaceAll("\\W", "_").toLowerCase();
+    }
+}
@@ -0,0 +1,433 @@
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+
+// Monte Carlo VaR / Expected Shortfall of a portfolio of NEPSE holdings with correlated shocks.
+// Usage: PortfolioVaR [--days=N] SYMBOL=shares ...   or   PortfolioVaR [--days=N] --all=shares
+// The daily log-return covariance comes from the last portfolio.lookbackDays dates in ohlcv_daily (gaps are
+// carried forward) and is factored by a blocked Cholesky decomposition; each path draws independent normals z
+// and uses sqrt(days) z L^T as the correlated horizon shocks around a drift of days * (mean - variance / 2); all
+// statistics stay daily, so the horizon is days trading days of real returns.
+// Covariance tiles, Cholesky panel/trailing updates and path chunks all run on the shared ComputePool.
+public class PortfolioVaR {
+
+    // Settings, overridable with -Dportfolio.lookbackDays=..., -Dportfolio.blockSize=..., -Dportfolio.chunkPaths=...
+    private static final int LOOKBACK_DATES = Integer.getInteger("portfolio.lookbackDays", 250);
+    private static final int BLOCK = Integer.getInteger("portfolio.blockSize", 64);
+    private static final int CHUNK_PATHS = Integer.getInteger("portfolio.chunkPaths", 2048);
+    // Paths multiplied by the factor together, so each row of it is reused while it is in cache
+    private static final int PATH_BLOCK = 64;
+    private static final double[] CONFIDENCE_LEVELS = {0.90, 0.95, 0.99};
+
+    public static class Result {
+        final List<String> symbols;
+        final double[] positionValues;
+        final double portfolioValue;
+        final int observations;
+        final double shrinkage;
+        final int paths;
+        final double[] confidenceLevels;
+        final double[] var;
+        final double[] expectedShortfall;
+        final double[] parametricVar;
+
+        Result(List<String> symbols, double[] positionValues, int observations, double shrinkage, int paths, double[] confidenceLevels) {
+            this.symbols = symbols;
+            this.positionValues = positionValues;
+            this.portfolioValue = Arrays.stream(positionValues).sum();
+            this.observations = observations;
+            this.shrinkage = shrinkage;
+            this.paths = paths;
+            this.confidenceLevels = confidenceLevels;
+            this.var = new double[confidenceLevels.length];
+            this.expectedShortfall = new double[confidenceLevels.length];
+            this.parametricVar = new double[confidenceLevels.length];
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = "jdbc:mysql://localhost:3306/nepse_data";
+        String user = "root";
+        String password = "";
+
+        int days = 10;
+        Double allShares = null;
+        Map<String, Double> holdings = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--days=")) {
+                days = Integer.parseInt(arg.substring("--days=".length()));
+            } else if (arg.startsWith("--all=")) {
+                allShares = Double.parseDouble(arg.substring("--all=".length()));
+            } else if (arg.indexOf('=') > 0) {
+                holdings.put(arg.substring(0, arg.indexOf('=')), Double.parseDouble(arg.substring(arg.indexOf('=') + 1)));
+            }
+        }
+        if (allShares != null) {
+            for (String symbol : MonteCarloVaR.getAllStockSymbols(url, user, password)) {
+                holdings.putIfAbsent(symbol, allShares);
+            }
+        }
+        if (holdings.isEmpty()) {
+            System.out.println("Usage: PortfolioVaR [--days=N] SYMBOL=shares ... | --all=shares");
+            return;
+        }
+
+        Result result;
+        try {
+            result = calculate(url, user, password, holdings, days, MonteCarloEngine.NUM_SIMULATIONS, CONFIDENCE_LEVELS);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+
+        System.out.printf("Portfolio of %d symbols worth Rs.%.2f, %d-day horizon, %d daily returns, shrinkage %.3f, %d paths%n",
+                result.symbols.size(), result.portfolioValue, days, result.observations, result.shrinkage, result.paths);
+        for (int c = 0; c < result.confidenceLevels.length; c++) {
+            System.out.printf("At %.0f%%: VaR Rs.%.2f (%.2f%%), Expected Shortfall Rs.%.2f, delta-normal VaR Rs.%.2f%n",
+                    result.confidenceLevels[c] * 100, result.var[c], result.var[c] / result.portfolioValue * 100,
+                    result.expectedShortfall[c], result.parametricVar[c]);
+        }
+        storePortfolioVaR(url, user, password, holdings, days, result);
+        System.out.println(ComputePool.stats());
+        ConnectionPool.printAllStats();
+    }
+
+    public static Result calculate(String url, String user, String password, Map<String, Double> holdings, int days,
+                                   int numSimulations, double... confidenceLevels) throws Exception {
+        // Closes by date, one column per requested symbol (NaN where it did not trade)
+        List<String> requested = new ArrayList<>(holdings.keySet());
+        Map<String, Integer> columns = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 0; i < requested.size(); i++) {
+            columns.put(requested.get(i), i);
+        }
+        List<double[]> rows = new ArrayList<>();
+        LocalDate[] lastDate = new LocalDate[1];
+        try (Connection conn = ConnectionPool.getConnection(url, user, password)) {
+            OhlcvStore.recentCloses(conn, requested, LOOKBACK_DATES + 1, (symbol, date, close) -> {
+                if (!date.equals(lastDate[0])) {
+                    double[] row = new double[requested.size()];
+                    Arrays.fill(row, Double.NaN);
+                    rows.add(row);
+                    lastDate[0] = date;
+                }
+                Integer column = columns.get(symbol);
+                if (column != null) {
+                    rows.get(rows.size() - 1)[column] = close;
+                }
+            });
+        }
+        int observations = rows.size() - 1;
+        if (observations < 2) {
+            throw new IllegalArgumentException("Not enough history for the requested holdings.");
+        }
+
+        // Daily log returns per kept symbol, carrying the last close over gaps (the first close backwards)
+        List<String> symbols = new ArrayList<>();
+        List<double[]> returns = new ArrayList<>();
+        List<Double> values = new ArrayList<>();
+        for (int j = 0; j < requested.size(); j++) {
+            double[] closes = new double[rows.size()];
+            int traded = 0;
+            double last = Double.NaN;
+            for (int t = 0; t < rows.size(); t++) {
+                double close = rows.get(t)[j];
+                if (!Double.isNaN(close) && close > 0) {
+                    if (Double.isNaN(last)) {
+                        Arrays.fill(closes, 0, t, close);
+                    }
+                    last = close;
+                    traded++;
+                }
+                closes[t] = last;
+            }
+            if (traded < 2) {
+                System.out.println("Skipping " + requested.get(j) + ": fewer than two closes in the lookback window.");
+                continue;
+            }
+            double[] r = new double[observations];
+            for (int t = 0; t < observations; t++) {
+                r[t] = Math.log(closes[t + 1] / closes[t]);
+            }
+            symbols.add(requested.get(j));
+            returns.add(r);
+            values.add(holdings.get(requested.get(j)) * last);
+        }
+        int n = symbols.size();
+        if (n == 0) {
+            throw new IllegalArgumentException("None of the requested symbols has enough history.");
+        }
+
+        double[][] x = returns.toArray(new double[0][]);
+        double[] mean = new double[n];
+        for (int i = 0; i < n; i++) {
+            for (double r : x[i]) {
+                mean[i] += r;
+            }
+            mean[i] /= observations;
+            for (int t = 0; t < observations; t++) {
+                x[i][t] -= mean[i];
+            }
+        }
+        double[] covariance = covariance(x, observations);
+        double[] variance = new double[n];
+        for (int i = 0; i < n; i++) {
+            variance[i] = covariance[i * n + i];
+        }
+
+        // With fewer returns than symbols the sample covariance is singular: shrink the correlations until it factors
+        double shrinkage = 0;
+        double[] factor = covariance.clone();
+        while (!cholesky(factor, n)) {
+            shrinkage = shrinkage == 0 ? 0.01 : Math.min(1, shrinkage * 2);
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    factor[i * n + j] = i == j ? Math.max(variance[i], 1e-12) : (1 - shrinkage) * covariance[i * n + j];
+                }
+            }
+        }
+
+        double[] positionValues = new double[n];
+        double[] drift = new double[n];
+        for (int i = 0; i < n; i++) {
+            positionValues[i] = values.get(i);
+            drift[i] = days * (mean[i] - 0.5 * variance[i]);
+        }
+        double scale = Math.sqrt(days);
+        double[] upper = transpose(factor, n);
+
+        Result result = new Result(symbols, positionValues, observations, shrinkage, numSimulations, confidenceLevels);
+        double maxAlpha = 0;
+        for (double level : confidenceLevels) {
+            maxAlpha = Math.max(maxAlpha, 1 - level);
+        }
+        double[] tail = simulateTail(upper, n, drift, scale, positionValues, numSimulations, MonteCarloEngine.nextSeed(), maxAlpha);
+
+        // Delta-normal cross-check: over days independent daily shocks the P&L is about normal with variance
+        // days * v^T Sigma v = days * |L^T v|^2
+        double meanPnl = 0;
+        for (int i = 0; i < n; i++) {
+            meanPnl += positionValues[i] * drift[i];
+        }
+        double sumSquares = 0;
+        for (int k = 0; k < n; k++) {
+            double y = 0;
+            for (int i = k; i < n; i++) {
+                y += upper[k * n + i] * positionValues[i];
+            }
+            sumSquares += y * y;
+        }
+        double pnlStdDev = Math.sqrt(days * sumSquares);
+
+        for (int c = 0; c < confidenceLevels.length; c++) {
+            double alpha = 1 - confidenceLevels[c];
+            int k = Math.min(tail.length - 1, Quantiles.index(alpha, numSimulations));
+            double sum = 0;
+            for (int i = 0; i <= k; i++) {
+                sum += tail[i];
+            }
+            result.var[c] = -tail[k];
+            result.expectedShortfall[c] = -(sum / (k + 1));
+            result.parametricVar[c] = -(meanPnl + pnlStdDev * NormalDist.inverseCdf(alpha));
+        }
+        return result;
+    }
+
+    // Sample covariance of the centred series x[i][0..observations), as a row-major n x n matrix. Each task
+    // fills one BLOCK x BLOCK tile on or above the diagonal and mirrors it.
+    static double[] covariance(double[][] x, int observations) throws InterruptedException, ExecutionException {
+        int n = x.length;
+        double[] covariance = new double[n * n];
+        List<ForkJoinTask<?>> tiles = new ArrayList<>();
+        for (int i0 = 0; i0 < n; i0 += BLOCK) {
+            for (int j0 = i0; j0 < n; j0 += BLOCK) {
+                int rowStart = i0;
+                int colStart = j0;
+                tiles.add(ForkJoinTask.adapt(() -> {
+                    for (int i = rowStart; i < Math.min(n, rowStart + BLOCK); i++) {
+                        for (int j = Math.max(i, colStart); j < Math.min(n, colStart + BLOCK); j++) {
+                            double[] a = x[i];
+                            double[] b = x[j];
+                            double sum = 0;
+                            for (int t = 0; t < observations; t++) {
+                                sum += a[t] * b[t];
+                            }
+                            covariance[i * n + j] = sum / (observations - 1);
+                            covariance[j * n + i] = sum / (observations - 1);
+                        }
+                    }
+                }));
+            }
+        }
+        ComputePool.invokeAll(tiles);
+        return covariance;
+    }
+
+    // Right-looking blocked Cholesky: replaces the row-major n x n matrix a by its lower factor L (upper part
+    // zeroed). Per block column: factor the diagonal block, solve the panel below it, then update the trailing
+    // matrix; the last two steps are split into row blocks on the compute pool. False if a is not positive definite.
+    static boolean cholesky(double[] a, int n) throws InterruptedException, ExecutionException {
+        for (int k0 = 0; k0 < n; k0 += BLOCK) {
+            int k1 = Math.min(n, k0 + BLOCK);
+            for (int j = k0; j < k1; j++) {
+                double d = a[j * n + j] - dot(a, j * n + k0, j * n + k0, j - k0);
+                if (!(d > 0)) {
+                    return false;
+                }
+                a[j * n + j] = Math.sqrt(d);
+                for (int i = j + 1; i < k1; i++) {
+                    a[i * n + j] = (a[i * n + j] - dot(a, i * n + k0, j * n + k0, j - k0)) / a[j * n + j];
+                }
+            }
+            if (k1 == n) {
+                break;
+            }
+
+            int blockStart = k0;
+            int blockEnd = k1;
+            List<ForkJoinTask<?>> panel = new ArrayList<>();
+            for (int i0 = k1; i0 < n; i0 += BLOCK) {
+                int rowStart = i0;
+                panel.add(ForkJoinTask.adapt(() -> {
+                    for (int i = rowStart; i < Math.min(n, rowStart + BLOCK); i++) {
+                        for (int j = blockStart; j < blockEnd; j++) {
+                            a[i * n + j] = (a[i * n + j] - dot(a, i * n + blockStart, j * n + blockStart, j - blockStart)) / a[j * n + j];
+                        }
+                    }
+                }));
+            }
+            ComputePool.invokeAll(panel);
+
+            List<ForkJoinTask<?>> trailing = new ArrayList<>();
+            for (int i0 = k1; i0 < n; i0 += BLOCK) {
+                int rowStart = i0;
+                trailing.add(ForkJoinTask.adapt(() -> {
+                    for (int i = rowStart; i < Math.min(n, rowStart + BLOCK); i++) {
+                        for (int j = blockEnd; j <= i; j++) {
+                            a[i * n + j] -= dot(a, i * n + blockStart, j * n + blockStart, blockEnd - blockStart);
+                        }
+                    }
+                }));
+            }
+            ComputePool.invokeAll(trailing);
+        }
+        for (int i = 0; i < n; i++) {
+            Arrays.fill(a, i * n + i + 1, i * n + n, 0);
+        }
+        return true;
+    }
+
+    private static double dot(double[] a, int from, int other, int length) {
+        double sum = 0;
+        for (int p = 0; p < length; p++) {
+            sum += a[from + p] * a[other + p];
+        }
+        return sum;
+    }
+
+    private static double[] transpose(double[] a, int n) {
+        double[] t = new double[n * n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                t[j * n + i] = a[i * n + j];
+            }
+        }
+        return t;
+    }
+
+    // The smallest index(maxAlpha)+1 portfolio P&Ls, ascending. Paths are cut into chunks with their own
+    // SplittableRandom split off the seed (same scheme as MonteCarloEngine), and each chunk works through
+    // PATH_BLOCK paths at a time: x = z U with U = L^T walked row by row, the inner loop a contiguous axpy.
+    static double[] simulateTail(double[] upper, int n, double[] drift, double scale, double[] positionValues,
+                                 int numSimulations, long seed, double maxAlpha) throws InterruptedException, ExecutionException {
+        int k = Quantiles.index(maxAlpha, numSimulations) + 1;
+        Map<Thread, Quantiles.TailBuffer> tails = new ConcurrentHashMap<>();
+        SplittableRandom root = new SplittableRandom(seed);
+        List<ForkJoinTask<?>> chunks = new ArrayList<>();
+        for (int from = 0; from < numSimulations; from += CHUNK_PATHS) {
+            int start = from;
+            int end = Math.min(numSimulations, from + CHUNK_PATHS);
+            SplittableRandom random = root.split();
+            chunks.add(ForkJoinTask.adapt(() -> {
+                Quantiles.TailBuffer tail = tails.computeIfAbsent(Thread.currentThread(), thread -> new Quantiles.TailBuffer(k));
+                double[] z = new double[PATH_BLOCK * n];
+                double[] x = new double[PATH_BLOCK * n];
+                for (int p0 = start; p0 < end; p0 += PATH_BLOCK) {
+                    int paths = Math.min(PATH_BLOCK, end - p0);
+                    for (int q = 0; q < paths * n; q++) {
+                        z[q] = random.nextGaussian();
+                    }
+                    Arrays.fill(x, 0, paths * n, 0);
+                    for (int row = 0; row < n; row++) {
+                        int u = row * n;
+                        for (int p = 0; p < paths; p++) {
+                            double zk = z[p * n + row];
+                            int off = p * n;
+                            for (int i = row; i < n; i++) {
+                                x[off + i] += upper[u + i] * zk;
+                            }
+                        }
+                    }
+                    for (int p = 0; p < paths; p++) {
+                        int off = p * n;
+                        double pnl = 0;
+                        for (int i = 0; i < n; i++) {
+                            pnl += positionValues[i] * (Math.exp(drift[i] + scale * x[off + i]) - 1);
+                        }
+                        tail.add(pnl);
+                    }
+                }
+            }));
+        }
+        ComputePool.invokeAll(chunks);
+        return Quantiles.TailBuffer.merge(new ArrayList<>(tails.values()), k);
+    }
+
+    private static void storePortfolioVaR(String url, String user, String password, Map<String, Double> holdings, int days,
+                                          Result result) throws Exception {
+        try (Connection conn = ConnectionPool.getConnection(url, user, password);
+             Statement stmt = conn.createStatement()) {
+
+            // Create table if not exists
+            String createTableSQL = "CREATE TABLE IF NOT EXISTS portfolio_var_data (" +
+                    "id INT AUTO_INCREMENT PRIMARY KEY, " +
+                    "date TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                    "holdings TEXT, " +
+                    "num_symbols INT, " +
+                    "days_of_investment INT, " +
+                    "portfolio_value DOUBLE, " +
+                    "confidence_level DOUBLE, " +
+                    "var DOUBLE, " +
+                    "expected_shortfall DOUBLE, " +
+                    "parametric_var DOUBLE, " +
+                    "shrinkage DOUBLE, " +
+                    "paths INT)";
+            stmt.execute(createTableSQL);
+
+            StringBuilder description = new StringBuilder();
+            for (String symbol : result.symbols) {
+                description.append(description.length() == 0 ? "" : ",").append(symbol).append('=').append(holdings.get(symbol));
+            }
+            String insertSQL = "INSERT INTO portfolio_var_data (holdings, num_symbols, days_of_investment, portfolio_value, confidence_level, " +
+                    "var, expected_shortfall, parametric_var, shrinkage, paths) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+            try (PreparedStatement pstmt = conn.prepareStatement(insertSQL)) {
+                for (int c = 0; c < result.confidenceLevels.length; c++) {
+                    pstmt.setString(1, description.toString());
+                    pstmt.setInt(2, result.symbols.size());
+                    pstmt.setInt(3, days);
+                    pstmt.setDouble(4, result.portfolioValue);
+                    pstmt.setDouble(5, result.confidenceLevels[c]);
+                    pstmt.setDouble(6, result.var[c]);
+                    pstmt.setDouble(7, result.expectedShortfall[c]);
+                    pstmt.setDouble(8, result.parametricVar[c]);
+                    pstmt.setDouble(9, result.shrinkage);
+                    pstmt.setInt(10, result.paths);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+import java.util.Arrays;
+import java.util.List;
+
+// Order statistics for VaR / Expected Shortfall without sorting every path:
+// - select(): in-place introselect, O(n) expected, falling back to a sort of the remaining range if the
+//   partitioning degenerates
+// - TailBuffer: bounded max-heap keeping the k smallest values a worker has seen, merged at the end
+// - P2: Jain & Chlamtac's P-square estimator, one quantile in five markers, for single-pass streaming
+public class Quantiles {
+
+    // Index of the alpha quantile in an ascending array of n values (same convention as the old sort-based VaR)
+    public static int index(double alpha, int n) {
+        return Math.max(0, Math.min(n - 1, (int) (alpha * n)));
+    }
+
+    // Reorders values so values[k] is the k-th smallest and everything before it is <= it; returns values[k]
+    public static double select(double[] values, int k) {
+        int lo = 0;
+        int hi = values.length - 1;
+        int depth = 2 * (32 - Integer.numberOfLeadingZeros(values.length));
+        while (hi > lo) {
+            if (depth-- == 0) {
+                Arrays.sort(values, lo, hi + 1);
+                return values[k];
+            }
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < values[lo]) {
+                swap(values, lo, mid);
+            }
+            if (values[hi] < values[lo]) {
+                swap(values, lo, hi);
+            }
+            if (values[hi] < values[mid]) {
+                swap(values, mid, hi);
+            }
+            double pivot = values[mid];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(values, i++, j--);
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return values[k];
+            }
+        }
+        return values[k];
+    }
+
+    public static double quantile(double[] values, double alpha) {
+        return select(values, index(alpha, values.length));
+    }
+
+    private static void swap(double[] values, int i, int j) {
+        double tmp = values[i];
+        values[i] = values[j];
+        values[j] = tmp;
+    }
+
+    // The capacity smallest values added so far
+    public static class TailBuffer {
+        private final double[] heap;
+        private int size;
+
+        public TailBuffer(int capacity) {
+            heap = new double[Math.max(1, capacity)];
+        }
+
+        public void add(double value) {
+            if (size < heap.length) {
+                int i = size++;
+                heap[i] = value;
+                while (i > 0 && heap[(i - 1) / 2] < heap[i]) {
+                    swap(heap, i, (i - 1) / 2);
+                    i = (i - 1) / 2;
+                }
+            } else if (value < heap[0]) {
+                heap[0] = value;
+                int i = 0;
+                while (true) {
+                    int largest = i;
+                    int left = 2 * i + 1;
+                    int right = left + 1;
+                    if (left < size && heap[left] > heap[largest]) {
+                        largest = left;
+                    }
+                    if (right < size && heap[right] > heap[largest]) {
+                        largest = right;
+                    }
+                    if (largest == i) {
+                        break;
+                    }
+                    swap(heap, i, largest);
+                    i = largest;
+                }
+            }
+        }
+
+        // The k smallest values across all buffers, ascending
+        public static double[] merge(List<TailBuffer> buffers, int k) {
+            int total = 0;
+            for (TailBuffer buffer : buffers) {
+                total += buffer.size;
+            }
+            double[] all = new double[total];
+            int offset = 0;
+            for (TailBuffer buffer : buffers) {
+                System.arraycopy(buffer.heap, 0, all, offset, buffer.size);
+                offset += buffer.size;
+            }
+            int keep = Math.min(k, total);
+            if (keep < total) {
+                select(all, keep - 1);
+            }
+            double[] tail = Arrays.copyOf(all, keep);
+            Arrays.sort(tail);
+            return tail;
+        }
+    }
+
+    // Streaming estimate of the p-quantile in O(1) memory; not mergeable, so feed it from one thread at a time
+    public static class P2 {
+        private final double p;
+        private final double[] q = new double[5];
+        private final double[] n = new double[5];
+        private final double[] desired = new double[5];
+        private final double[] increment;
+        private long count;
+
+        public P2(double p) {
+            this.p = p;
+            this.increment = new double[]{0, p / 2, p, (1 + p) / 2, 1};
+        }
+
+        public void add(double x) {
+            if (count < 5) {
+                q[(int) count++] = x;
+                if (count == 5) {
+                    Arrays.sort(q);
+                    for (int i = 0; i < 5; i++) {
+                        n[i] = i;
+                    }
+                    desired[0] = 0;
+                    desired[1] = 2 * p;
+                    desired[2] = 4 * p;
+                    desired[3] = 2 + 2 * p;
+                    desired[4] = 4;
+                }
+                return;
+            }
+            count++;
+
+            int k;
+            if (x < q[0]) {
+                q[0] = x;
+                k = 0;
+            } else if (x >= q[4]) {
+                q[4] = Math.max(q[4], x);
+                k = 3;
+            } else {
+                k = 0;
+                while (k < 3 && x >= q[k + 1]) {
+                    k++;
+                }
+            }
+            for (int i = k + 1; i < 5; i++) {
+                n[i]++;
+            }
+            for (int i = 0; i < 5; i++) {
+                desired[i] += increment[i];
+            }
+
+            for (int i = 1; i <= 3; i++) {
+                double d = desired[i] - n[i];
+                if ((d >= 1 && n[i + 1] - n[i] > 1) || (d <= -1 && n[i - 1] - n[i] < -1)) {
+                    int sign = d > 0 ? 1 : -1;
+                    double candidate = parabolic(i, sign);
+                    q[i] = q[i - 1] < candidate && candidate < q[i + 1] ? candidate : linear(i, sign);
+                    n[i] += sign;
+                }
+            }
+        }
+
+        public double value() {
+            if (count == 0) {
+                return Double.NaN;
+            }
+            if (count < 5) {
+                double[] seen = Arrays.copyOf(q, (int) count);
+                Arrays.sort(seen);
+                return seen[index(p, seen.length)];
+            }
+            return q[2];
+        }
+
+        public long count() {
+            return count;
+        }
+
+        private double parabolic(int i, int d) {
+            return q[i] + d / (n[i + 1] - n[i - 1]) * ((n[i] - n[i - 1] + d) * (q[i + 1] - q[i]) / (n[i + 1] - n[i])
+                    + (n[i + 1] - n[i] - d) * (q[i] - q[i - 1]) / (n[i] - n[i - 1]));
+        }
+
+        private double linear(int i, int d) {
+            return q[i] + d * (q[i + d] - q[i]) / (n[i + d] - n[i]);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Close prices and daily log returns per symbol for the VaR code, kept in primitive arrays so a query
+// neither reloads nor reboxes the whole history. A cached series is brought up to date by re-reading from its
+// last date (at most once per returns.cache.refreshMs), so a close revised or re-rolled for that day replaces the
+// cached one and only later closes are appended; the least recently used
+// symbols are evicted beyond returns.cache.size entries.
+public class ReturnSeriesCache {
+
+    private static final int CAPACITY = Integer.getInteger("returns.cache.size", 512);
+    private static final long REFRESH_MS = Long.getLong("returns.cache.refreshMs", 60000);
+
+    private static long hits;
+    private static long misses;
+    private static long refreshes;
+    private static long appendedCloses;
+    private static long evictions;
+
+    // Access-ordered, so the eldest entry is the least recently used one
+    private static final Map<String, Series> CACHE = new LinkedHashMap<String, Series>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Series> eldest) {
+            if (size() > CAPACITY) {
+                evictions++;
+                return true;
+            }
+            return false;
+        }
+    };
+
+    // Mean and sample standard deviation of daily log returns over a horizon
+    public static class Stats {
+        final int days;
+        final double meanReturn;
+        final double volatility;
+
+        Stats(int days, double meanReturn, double volatility) {
+            this.days = days;
+            this.meanReturn = meanReturn;
+            this.volatility = volatility;
+        }
+    }
+
+    // One symbol's closes, oldest first, with returns[i] = ln(closes[i + 1] / closes[i])
+    public static class Series {
+        final String symbol;
+        private double[] closes = new double[64];
+        private double[] returns = new double[64];
+        private int size;
+        private LocalDate lastDate;
+        private long refreshedAt;
+
+        Series(String symbol) {
+            this.symbol = symbol;
+        }
+
+        // A close for the last date replaces it (the day was rolled up again); older dates are not revisited
+        synchronized void append(LocalDate date, double close) {
+            if (lastDate != null && !date.isAfter(lastDate)) {
+                if (date.equals(lastDate)) {
+                    closes[size - 1] = close;
+                    if (size > 1) {
+                        returns[size - 2] = Math.log(close / closes[size - 2]);
+                    }
+                }
+                return;
+            }
+            if (size == closes.length) {
+                closes = Arrays.copyOf(closes, size * 2);
+                returns = Arrays.copyOf(returns, size * 2);
+            }
+            if (size > 0) {
+                returns[size - 1] = Math.log(close / closes[size - 1]);
+            }
+            closes[size++] = close;
+            lastDate = date;
+        }
+
+        public synchronized int size() {
+            return size;
+        }
+
+        public synchronized double lastClose() {
+            return closes[size - 1];
+        }
+
+        public synchronized LocalDate lastDate() {
+            return lastDate;
+        }
+
+        public synchronized double[] closes() {
+            return Arrays.copyOf(closes, size);
+        }
+
+        // The last count daily log returns (all of them when fewer), oldest first
+        public synchronized double[] returns(int count) {
+            int available = Math.max(0, size - 1);
+            return Arrays.copyOfRange(returns, available - Math.min(count, available), available);
+        }
+
+        // Same window as MonteCarloVaR.calculateMeanReturn/calculateVolatility (the last days - 1 returns,
+        // days capped at the history length), in a single Welford pass
+        public synchronized Stats stats(int days) {
+            days = Math.min(days, size);
+            return welford(days, size - days, size - 1, Double.NaN);
+        }
+
+        // stats(days) as if latestClose had been appended, e.g. an intraday LTP before the day's close is stored
+        public synchronized Stats statsWith(int days, double latestClose) {
+            days = Math.min(days, size + 1);
+            return welford(days, size + 1 - days, size - 1, Math.log(latestClose / closes[size - 1]));
+        }
+
+        // Mean and sample standard deviation of returns[from, to), followed by extra unless it is NaN
+        private Stats welford(int days, int from, int to, double extra) {
+            int n = 0;
+            double mean = 0;
+            double m2 = 0;
+            int count = to - from + (Double.isNaN(extra) ? 0 : 1);
+            for (int j = 0; j < count; j++) {
+                double r = from + j < to ? returns[from + j] : extra;
+                n++;
+                double delta = r - mean;
+                mean += delta / n;
+                m2 += delta * (r - mean);
+            }
+            return new Stats(days, mean, Math.sqrt(m2 / (n - 1)));
+        }
+    }
+
+    // The symbol's series, loading it on a miss and refreshing it from its last cached date on a hit
+    public static Series get(String url, String user, String password, String symbol) throws SQLException {
+        Series series;
+        synchronized (CACHE) {
+            series = CACHE.get(symbol);
+            if (series != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+
+        if (series == null) {
+            series = new Series(symbol);
+            try (Connection conn = ConnectionPool.getConnection(url, user, password)) {
+                OhlcvStore.closesFrom(conn, symbol, null, series::append);
+            }
+            series.refreshedAt = System.currentTimeMillis();
+            put(series);
+            return series;
+        }
+
+        synchronized (series) {
+            long now = System.currentTimeMillis();
+            if (now - series.refreshedAt >= REFRESH_MS) {
+                int before = series.size;
+                try (Connection conn = ConnectionPool.getConnection(url, user, password)) {
+                    OhlcvStore.closesFrom(conn, symbol, series.lastDate, series::append);
+                }
+                int appended = series.size - before;
+                series.refreshedAt = now;
+                synchronized (CACHE) {
+                    refreshes++;
+                    appendedCloses += appended;
+                }
+            }
+        }
+        return series;
+    }
+
+    // Caches a series loaded elsewhere (e.g. by the all-symbols scan), replacing any cached one
+    public static void put(Series series) {
+        if (series.refreshedAt == 0) {
+            series.refreshedAt = System.currentTimeMillis();
+        }
+        synchronized (CACHE) {
+            CACHE.put(series.symbol, series);
+        }
+    }
+
+    public static String stats() {
+        synchronized (CACHE) {
+            long lookups = hits + misses;
+            return String.format("Return series cache: %d/%d symbols, hits=%d misses=%d (hit rate %.1f%%), refreshes=%d appendedCloses=%d evictions=%d",
+                    CACHE.size(), CAPACITY, hits, misses, lookups == 0 ? 0.0 : 100.0 * hits / lookups,
+                    refreshes, appendedCloses, evictions);
+        }
+    }
+}
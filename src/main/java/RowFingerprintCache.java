@@ -0,0 +1,102 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Last written fingerprint per symbol, kept in an open-addressing table of parallel String/long arrays
+// so a tick over ~300 symbols does no boxing and no per-entry objects.
+public class RowFingerprintCache {
+
+    private static final int INITIAL_CAPACITY = 512;
+
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private long[] values = new long[INITIAL_CAPACITY];
+    private int size;
+
+    private long changedRows;
+    private long skippedRows;
+
+    public static long mix(long hash, double value) {
+        return mix(hash, Double.doubleToLongBits(value));
+    }
+
+    public static long mix(long hash, long value) {
+        long h = (hash ^ value) * 0xbf58476d1ce4e5b9L;
+        h ^= h >>> 31;
+        return h * 0x94d049bb133111ebL;
+    }
+
+    public static long seed() {
+        return 0x9E3779B97F4A7C15L;
+    }
+
+    // Rows whose fingerprint differs from the last committed one; counts changed vs. skipped for this tick
+    public synchronized <T extends FingerprintedRow> List<T> changedRows(List<T> rows) {
+        List<T> changed = new ArrayList<>();
+        for (T row : rows) {
+            int slot = slot(row.getSymbol());
+            if (keys[slot] != null && values[slot] == row.fingerprint()) {
+                skippedRows++;
+            } else {
+                changed.add(row);
+                changedRows++;
+            }
+        }
+        return changed;
+    }
+
+    // Records fingerprints once the rows have actually been written, so a failed write is retried next tick
+    public synchronized void commit(List<? extends FingerprintedRow> rows) {
+        for (FingerprintedRow row : rows) {
+            put(row.getSymbol(), row.fingerprint());
+        }
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(keys, null);
+        size = 0;
+    }
+
+    // Returns and resets the per-tick counters
+    public synchronized String endTick() {
+        String summary = "Rows changed: " + changedRows + ", unchanged rows skipped: " + skippedRows;
+        changedRows = 0;
+        skippedRows = 0;
+        return summary;
+    }
+
+    private void put(String key, long value) {
+        int slot = slot(key);
+        if (keys[slot] == null) {
+            keys[slot] = key;
+            if (++size * 2 > keys.length) {
+                resize();
+                slot = slot(key);
+            }
+        }
+        values[slot] = value;
+    }
+
+    private int slot(String key) {
+        int mask = keys.length - 1;
+        int h = key.hashCode();
+        int i = (h ^ (h >>> 16)) & mask;
+        while (keys[i] != null && !keys[i].equals(key)) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void resize() {
+        String[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new String[oldKeys.length * 2];
+        values = new long[oldValues.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
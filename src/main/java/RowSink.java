@@ -0,0 +1,22 @@
+import java.util.List;
+
+// A consumer of one scraped page, registered with CollectorDaemon against the URL it reads
+public interface RowSink {
+    String name();
+
+    MarketHours marketHours();
+
+    // Creates the tables the sink writes to
+    void init() throws Exception;
+
+    // Cell texts of every table.table row on the page, fetched once per tick and shared by all sinks of the URL
+    void onRows(List<String[]> rows) throws Exception;
+
+    // Runs once per trading day after marketHours() closes
+    default void onMarketClose() throws Exception {
+    }
+
+    // Runs once when the calendar date changes
+    default void onNewDay() throws Exception {
+    }
+}
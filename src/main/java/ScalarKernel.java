@@ -0,0 +1,17 @@
+import java.util.SplittableRandom;
+
+// One path at a time with SplittableRandom.nextGaussian(); always available
+public class ScalarKernel implements SimulationKernel {
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+
+    @Override
+    public void simulate(double[] returns, int from, int to, double pathDrift, double pathDiffusion, SplittableRandom random) {
+        for (int i = from; i < to; i++) {
+            returns[i] = pathDrift + pathDiffusion * random.nextGaussian();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+import java.util.Arrays;
+
+// One worksheet row as typed cells, reused from row to row: numeric cells keep their double (date-formatted
+// ones flagged, so a date column is read as an epoch day straight from the serial number), text cells their
+// String. Filled by StreamingXlsxReader and by the DOM branch of ExcelToDatabase alike.
+public class SheetRow {
+
+    static final byte BLANK = 0;
+    static final byte NUMBER = 1;
+    static final byte DATE = 2;
+    static final byte TEXT = 3;
+
+    // Serial day number of 1970-01-01 in the 1900 and 1904 date systems
+    private static final long EPOCH_SERIAL_1900 = 25569;
+    private static final long EPOCH_SERIAL_1904 = 24107;
+    private static final double DAY_MILLIS = 86_400_000.0;
+
+    final boolean date1904;
+    private byte[] kinds = new byte[32];
+    private double[] numbers = new double[32];
+    private String[] texts = new String[32];
+    private int width;
+
+    SheetRow(boolean date1904) {
+        this.date1904 = date1904;
+    }
+
+    void clear() {
+        Arrays.fill(kinds, 0, width, BLANK);
+        Arrays.fill(texts, 0, width, null);
+        width = 0;
+    }
+
+    void setNumber(int column, double value, boolean date) {
+        ensure(column);
+        kinds[column] = date ? DATE : NUMBER;
+        numbers[column] = value;
+    }
+
+    void setText(int column, String value) {
+        ensure(column);
+        kinds[column] = TEXT;
+        texts[column] = value;
+    }
+
+    private void ensure(int column) {
+        if (column >= kinds.length) {
+            int length = Math.max(column + 1, kinds.length * 2);
+            kinds = Arrays.copyOf(kinds, length);
+            numbers = Arrays.copyOf(numbers, length);
+            texts = Arrays.copyOf(texts, length);
+        }
+        width = Math.max(width, column + 1);
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public byte kind(int column) {
+        return column < width ? kinds[column] : BLANK;
+    }
+
+    // Text of the cell; numbers only get formatted here, for the rare text column that holds one
+    public String text(int column) {
+        switch (kind(column)) {
+            case TEXT:
+                return texts[column];
+            case NUMBER:
+            case DATE:
+                return String.valueOf(numbers[column]);
+            default:
+                return "";
+        }
+    }
+
+    // The numeric value, also of a cell stored as text; NumberFormatException for blank or non-numeric cells
+    public double number(int column) {
+        switch (kind(column)) {
+            case NUMBER:
+            case DATE:
+                return numbers[column];
+            case TEXT:
+                return parseDouble(texts[column]);
+            default:
+                throw new NumberFormatException("empty cell in column " + column);
+        }
+    }
+
+    // Epoch day of a date cell, rounded to the millisecond like POI's DateUtil so 23:59:59.9996 is the next day.
+    // Only date and number cells; text dates are left to the caller.
+    public long epochDay(int column) {
+        double serial = numbers[column];
+        long whole = (long) Math.floor(serial);
+        if (Math.round((serial - whole) * DAY_MILLIS) >= DAY_MILLIS) {
+            whole++;
+        }
+        if (date1904) {
+            return whole - EPOCH_SERIAL_1904;
+        }
+        // The 1900 system counts a 29 Feb 1900 that never was (serial 60)
+        return whole - (whole < 61 ? EPOCH_SERIAL_1900 - 1 : EPOCH_SERIAL_1900);
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    // Plain decimals ("-1234.56") straight from the characters; at most 15 significant digits fit a double
+    // exactly, and dividing by an exact power of ten then rounds correctly. Anything else goes to Double.parseDouble.
+    static double parseDouble(CharSequence s, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            negative = s.charAt(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        boolean anyDigit = false;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; i < to; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                anyDigit = true;
+                if (digits > 0 || c != '0') {
+                    if (++digits > 15) {
+                        break;
+                    }
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                break;
+            }
+        }
+        if (i < to || !anyDigit || fractionDigits > 22) {
+            return Double.parseDouble(s.subSequence(from, to).toString().trim());
+        }
+        double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+
+    static double parseDouble(String s) {
+        return parseDouble(s, 0, s.length());
+    }
+}
@@ -0,0 +1,17 @@
+import java.util.SplittableRandom;
+
+// Inner loop of MonteCarloEngine: fills returns[from, to) with the horizon log returns of GBM paths, i.e.
+// pathDrift + pathDiffusion * Z with one standard normal Z per path (the sum of days i.i.d. daily shocks is
+// itself normal, so drawing them one by one only costs time), drawing only from the given generator.
+// Implementations: ScalarKernel (one path at a time) and VectorKernel (jdk.incubator.vector, in src/vector/java).
+public interface SimulationKernel {
+
+    String name();
+
+    // Paths advanced per instruction; 1 for the scalar kernel
+    default int lanes() {
+        return 1;
+    }
+
+    void simulate(double[] returns, int from, int to, double pathDrift, double pathDiffusion, SplittableRandom random);
+}
@@ -0,0 +1,240 @@
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// Reads the first sheet of an .xlsx row by row with a SAX parser over the sheet XML, so memory stays flat
+// however large the file is (only the shared-strings table is held). Cells arrive typed in a reused SheetRow:
+// numbers are parsed straight from the <v> characters and date-formatted ones flagged, so no per-cell String
+// is built for numeric data; formulas give their cached result.
+public class StreamingXlsxReader {
+
+    interface RowHandler {
+        // row is reused for the next row
+        void row(int rowNum, SheetRow row) throws Exception;
+    }
+
+    // Returns the number of rows handed to the handler
+    public static int read(Path path, RowHandler handler) throws Exception {
+        try (OPCPackage pkg = OPCPackage.open(path.toFile(), PackageAccess.READ)) {
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            XSSFReader reader = new XSSFReader(pkg);
+            StylesTable styles = reader.getStylesTable();
+            boolean date1904;
+            try (InputStream workbook = reader.getWorkbookData()) {
+                date1904 = isDate1904(workbook);
+            }
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return 0;
+            }
+            SheetHandler sheetHandler = new SheetHandler(handler, strings, styles, new SheetRow(date1904));
+            try (InputStream sheet = sheets.next()) {
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(sheetHandler);
+                parser.parse(new InputSource(sheet));
+            } catch (HandlerException e) {
+                throw e.getCause();
+            }
+            return sheetHandler.rows;
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("Cannot read " + path.getFileName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    // <workbookPr date1904="1"/> in workbook.xml switches serial dates to days since 1904-01-01
+    private static boolean isDate1904(InputStream workbook) throws IOException, SAXException, ParserConfigurationException {
+        boolean[] date1904 = {false};
+        XMLReader parser = XMLHelper.newXMLReader();
+        parser.setContentHandler(new DefaultHandler() {
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                if ("workbookPr".equals(localName)) {
+                    String value = attributes.getValue("date1904");
+                    date1904[0] = "1".equals(value) || "true".equalsIgnoreCase(value);
+                }
+            }
+        });
+        parser.parse(new InputSource(workbook));
+        return date1904[0];
+    }
+
+    // Column index of a cell reference such as "T12" (19)
+    static int column(String ref) {
+        int column = 0;
+        for (int i = 0; i < ref.length(); i++) {
+            char c = ref.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                break;
+            }
+            column = column * 26 + (c - 'A' + 1);
+        }
+        return column - 1;
+    }
+
+    // Carries a handler's exception out through the SAX callbacks, which cannot throw checked exceptions
+    private static class HandlerException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        HandlerException(Exception cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized Exception getCause() {
+            return (Exception) super.getCause();
+        }
+    }
+
+    private static class SheetHandler extends DefaultHandler {
+        private final RowHandler handler;
+        private final ReadOnlySharedStringsTable strings;
+        private final StylesTable styles;
+        private final SheetRow row;
+        // Resolved once per index: getItemAt wraps the string in a new rich-text object every call
+        private String[] sharedStrings;
+        // Per style index: 1 if it is a date format, -1 if not, 0 not looked up yet
+        private byte[] dateStyles = new byte[64];
+        private final StringBuilder value = new StringBuilder(32);
+        private boolean inValue;
+        private int rowNum = -1;
+        private int column;
+        private int nextColumn;
+        private String type;
+        private int style;
+        int rows;
+
+        SheetHandler(RowHandler handler, ReadOnlySharedStringsTable strings, StylesTable styles, SheetRow row) {
+            this.handler = handler;
+            this.strings = strings;
+            this.styles = styles;
+            this.row = row;
+            this.sharedStrings = new String[Math.max(16, strings.getUniqueCount())];
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row":
+                    String r = attributes.getValue("r");
+                    rowNum = r != null ? Integer.parseInt(r) - 1 : rowNum + 1;
+                    row.clear();
+                    nextColumn = 0;
+                    break;
+                case "c":
+                    String ref = attributes.getValue("r");
+                    column = ref != null ? column(ref) : nextColumn;
+                    nextColumn = column + 1;
+                    type = attributes.getValue("t");
+                    String s = attributes.getValue("s");
+                    style = s != null ? Integer.parseInt(s) : 0;
+                    break;
+                case "v":
+                    value.setLength(0);
+                    inValue = true;
+                    break;
+                case "is":
+                    value.setLength(0);
+                    break;
+                case "t":
+                    // Text of an inline string <is>, possibly in several rich-text runs
+                    inValue = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inValue) {
+                value.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "v":
+                    inValue = false;
+                    if (!"inlineStr".equals(type)) {
+                        setCell();
+                    }
+                    break;
+                case "t":
+                    inValue = false;
+                    break;
+                case "is":
+                    row.setText(column, value.toString());
+                    break;
+                case "row":
+                    try {
+                        handler.row(rowNum, row);
+                        rows++;
+                    } catch (Exception e) {
+                        throw new HandlerException(e);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void setCell() {
+            if (type == null || "n".equals(type)) {
+                try {
+                    row.setNumber(column, SheetRow.parseDouble(value, 0, value.length()), isDateStyle(style));
+                } catch (NumberFormatException e) {
+                    row.setText(column, value.toString());
+                }
+            } else if ("s".equals(type)) {
+                row.setText(column, sharedString(Integer.parseInt(value, 0, value.length(), 10)));
+            } else if ("b".equals(type)) {
+                row.setText(column, value.length() == 1 && value.charAt(0) == '1' ? "true" : "false");
+            } else {
+                // str (formula text), e (error)
+                row.setText(column, value.toString());
+            }
+        }
+
+        private String sharedString(int index) {
+            if (index >= sharedStrings.length) {
+                sharedStrings = Arrays.copyOf(sharedStrings, Math.max(index + 1, sharedStrings.length * 2));
+            }
+            String s = sharedStrings[index];
+            if (s == null) {
+                s = strings.getItemAt(index).getString();
+                sharedStrings[index] = s;
+            }
+            return s;
+        }
+
+        private boolean isDateStyle(int index) {
+            if (index >= dateStyles.length) {
+                dateStyles = Arrays.copyOf(dateStyles, Math.max(index + 1, dateStyles.length * 2));
+            }
+            if (dateStyles[index] == 0) {
+                XSSFCellStyle cellStyle = styles != null && index < styles.getNumCellStyles() ? styles.getStyleAt(index) : null;
+                boolean date = cellStyle != null && DateUtil.isADateFormat(cellStyle.getDataFormat(), cellStyle.getDataFormatString());
+                dateStyles[index] = (byte) (date ? 1 : -1);
+            }
+            return dateStyles[index] > 0;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// Pulls the <td> texts of every row inside <table class="table"> straight off a character stream,
+// equivalent to Jsoup's doc.select("table.table tr") + row.select("td") + cell.text() but without
+// building the page String or a DOM.
+public class TableRowExtractor {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final Consumer<String[]> sink;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+
+    private final StringBuilder tag = new StringBuilder(64);
+    private final StringBuilder text = new StringBuilder(64);
+    private final List<String> cells = new ArrayList<>(24);
+    private final List<Boolean> tables = new ArrayList<>();
+    private int matchingTables;
+    private boolean inRow;
+    private boolean inCell;
+    private boolean pendingSpace;
+    private int rows;
+
+    private TableRowExtractor(Reader reader, Consumer<String[]> sink) {
+        this.reader = reader;
+        this.sink = sink;
+    }
+
+    // Streams the reader to the end, handing each table.table row's cell texts to the sink; returns the row count
+    public static int extract(Reader reader, Consumer<String[]> sink) throws IOException {
+        TableRowExtractor extractor = new TableRowExtractor(reader, sink);
+        extractor.run();
+        return extractor.rows;
+    }
+
+    // Cell text at index, or "0" for the columns a short row doesn't have
+    public static String cell(String[] cells, int index) {
+        return index < cells.length ? cells[index] : "0";
+    }
+
+    // Maps extracted rows to typed rows, dropping the ones the mapper rejects with null
+    public static <T> List<T> mapRows(List<String[]> rows, Function<String[], T> mapper) {
+        List<T> mapped = new ArrayList<>(rows.size());
+        for (String[] cells : rows) {
+            T row = mapper.apply(cells);
+            if (row != null) {
+                mapped.add(row);
+            }
+        }
+        return mapped;
+    }
+
+    public static String rowText(String[] cells) {
+        return String.join(" ", cells);
+    }
+
+    private void run() throws IOException {
+        int c;
+        while ((c = read()) != -1) {
+            if (c == '<') {
+                readTag();
+            } else if (inCell) {
+                appendText((char) c);
+            }
+        }
+        endRow();
+    }
+
+    private int read() throws IOException {
+        if (pos == limit) {
+            limit = reader.read(buffer, 0, BUFFER_SIZE);
+            pos = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[pos++];
+    }
+
+    private void readTag() throws IOException {
+        tag.setLength(0);
+        int c = read();
+        if (c == '!') {
+            skipDeclarationOrComment();
+            return;
+        }
+        char quote = 0;
+        while (c != -1) {
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = (char) c;
+            } else if (c == '>') {
+                break;
+            }
+            tag.append((char) c);
+            c = read();
+        }
+        handleTag();
+    }
+
+    private void skipDeclarationOrComment() throws IOException {
+        int c = read();
+        if (c == '-' && read() == '-') {
+            // Comment: skip to the closing -->
+            int dashes = 0;
+            while ((c = read()) != -1) {
+                if (c == '>' && dashes >= 2) {
+                    return;
+                }
+                dashes = c == '-' ? dashes + 1 : 0;
+            }
+            return;
+        }
+        while (c != -1 && c != '>') {
+            c = read();
+        }
+    }
+
+    private void handleTag() throws IOException {
+        boolean closing = tag.length() > 0 && tag.charAt(0) == '/';
+        int start = closing ? 1 : 0;
+        int end = start;
+        while (end < tag.length() && !Character.isWhitespace(tag.charAt(end)) && tag.charAt(end) != '/') {
+            end++;
+        }
+        String name = tag.substring(start, end).toLowerCase();
+
+        switch (name) {
+            case "script":
+            case "style":
+                if (!closing) {
+                    skipRawText(name);
+                }
+                break;
+            case "table":
+                if (closing) {
+                    closeTable();
+                } else {
+                    boolean matches = hasClass(tag, end, "table");
+                    tables.add(matches);
+                    if (matches) {
+                        matchingTables++;
+                    }
+                }
+                break;
+            case "tr":
+                if (matchingTables > 0) {
+                    endRow();
+                    if (!closing) {
+                        inRow = true;
+                    }
+                }
+                break;
+            case "td":
+                if (inRow) {
+                    endCell();
+                    inCell = !closing;
+                }
+                break;
+            case "th":
+                if (inRow) {
+                    endCell();
+                }
+                break;
+            case "br":
+            case "p":
+            case "div":
+            case "li":
+                if (inCell) {
+                    pendingSpace = text.length() > 0;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void closeTable() {
+        if (tables.isEmpty()) {
+            return;
+        }
+        if (tables.remove(tables.size() - 1)) {
+            matchingTables--;
+            if (matchingTables == 0) {
+                endRow();
+            }
+        }
+    }
+
+    private void skipRawText(String name) throws IOException {
+        String closer = "</" + name;
+        int matched = 0;
+        int c;
+        while ((c = read()) != -1) {
+            if (Character.toLowerCase((char) c) == closer.charAt(matched)) {
+                if (++matched == closer.length()) {
+                    while (c != -1 && c != '>') {
+                        c = read();
+                    }
+                    return;
+                }
+            } else {
+                matched = c == '<' ? 1 : 0;
+            }
+        }
+    }
+
+    private void appendText(char c) throws IOException {
+        if (c == '&') {
+            readEntity();
+        } else {
+            appendChar(c);
+        }
+    }
+
+    // Collapses whitespace runs to a single space and drops leading/trailing whitespace, like Element.text()
+    private void appendChar(char c) {
+        if (Character.isWhitespace(c) || c == '\u00a0') {
+            pendingSpace = text.length() > 0;
+            return;
+        }
+        if (pendingSpace) {
+            text.append(' ');
+            pendingSpace = false;
+        }
+        text.append(c);
+    }
+
+    // Decodes the common named and numeric entities; anything else is kept literally
+    private void readEntity() throws IOException {
+        StringBuilder entity = new StringBuilder(8);
+        int c;
+        while ((c = read()) != -1 && entity.length() < 10 && (Character.isLetterOrDigit(c) || c == '#')) {
+            entity.append((char) c);
+        }
+        if (c != -1 && c != ';') {
+            pos--;
+        }
+        int decoded = decodeEntity(entity.toString());
+        if (decoded != 0) {
+            for (char ch : Character.toChars(decoded)) {
+                appendChar(ch);
+            }
+            return;
+        }
+        appendChar('&');
+        for (int i = 0; i < entity.length(); i++) {
+            appendChar(entity.charAt(i));
+        }
+        if (c == ';') {
+            appendChar(';');
+        }
+    }
+
+    // The entity's code point, 0 when it is not one we decode. A numeric reference outside Unicode, to a
+    // surrogate or to NUL becomes U+FFFD, as in jsoup.
+    private static int decodeEntity(String name) {
+        switch (name) {
+            case "amp":
+                return '&';
+            case "lt":
+                return '<';
+            case "gt":
+                return '>';
+            case "quot":
+                return '"';
+            case "apos":
+                return '\'';
+            case "nbsp":
+                return ' ';
+            default:
+                break;
+        }
+        if (name.length() > 1 && name.charAt(0) == '#') {
+            long codePoint;
+            try {
+                codePoint = name.charAt(1) == 'x' || name.charAt(1) == 'X'
+                        ? Long.parseLong(name.substring(2), 16)
+                        : Long.parseLong(name.substring(1));
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+            if (codePoint <= 0 || codePoint > Character.MAX_CODE_POINT
+                    || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+                return '\uFFFD';
+            }
+            return (int) codePoint;
+        }
+        return 0;
+    }
+
+    private void endCell() {
+        if (inCell) {
+            cells.add(text.toString());
+            text.setLength(0);
+            pendingSpace = false;
+            inCell = false;
+        }
+    }
+
+    private void endRow() {
+        if (!inRow) {
+            return;
+        }
+        endCell();
+        sink.accept(cells.toArray(new String[0]));
+        cells.clear();
+        rows++;
+        inRow = false;
+    }
+
+    // True when the tag's class attribute contains the given class name as a whole word
+    private static boolean hasClass(CharSequence tag, int from, String className) {
+        String attrs = tag.subSequence(from, tag.length()).toString();
+        int idx = attrs.toLowerCase().indexOf("class");
+        while (idx >= 0) {
+            int i = idx + 5;
+            while (i < attrs.length() && Character.isWhitespace(attrs.charAt(i))) {
+                i++;
+            }
+            if (i < attrs.length() && attrs.charAt(i) == '=') {
+                i++;
+                while (i < attrs.length() && Character.isWhitespace(attrs.charAt(i))) {
+                    i++;
+                }
+                String value;
+                if (i < attrs.length() && (attrs.charAt(i) == '"' || attrs.charAt(i) == '\'')) {
+                    int close = attrs.indexOf(attrs.charAt(i), i + 1);
+                    value = attrs.substring(i + 1, close < 0 ? attrs.length() : close);
+                } else {
+                    int e = i;
+                    while (e < attrs.length() && !Character.isWhitespace(attrs.charAt(e))) {
+                        e++;
+                    }
+                    value = attrs.substring(i, e);
+                }
+                for (String token : value.trim().split("\\s+")) {
+                    if (token.equals(className)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            idx = attrs.toLowerCase().indexOf("class", idx + 5);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,130 @@
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Fires jobs on exact wall-clock boundaries (every minute at :00, every 15s at :00/:15/...). Each tick is
+// scheduled from the previous boundary rather than from when the work finished, so fetch and DB time never
+// shift the cadence. A tick that arrives while the previous run is still going is skipped, not queued.
+public class TickScheduler {
+
+    interface Job {
+        void run() throws Exception;
+    }
+
+    // One timer thread only decides when to fire; the work itself runs on the worker pool
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "tick-timer");
+        return thread;
+    });
+    private final ExecutorService workers;
+
+    public TickScheduler(int threads) {
+        workers = Executors.newFixedThreadPool(threads);
+    }
+
+    // Runs the job on every period boundary; with market hours given, ticks outside the session are
+    // not fired at all and the next one is the first boundary of the next trading session
+    public Ticker schedule(String name, long periodMs, MarketHours hours, Job job) {
+        Ticker ticker = new Ticker(name, periodMs, hours, job);
+        ticker.scheduleNext(System.currentTimeMillis());
+        return ticker;
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+        workers.shutdown();
+    }
+
+    // First boundary of the period strictly after nowMs, aligned to local wall-clock time
+    public static long nextBoundary(long nowMs, long periodMs) {
+        long offset = ZoneId.systemDefault().getRules().getOffset(Instant.ofEpochMilli(nowMs)).getTotalSeconds() * 1000L;
+        long local = nowMs + offset;
+        return (local / periodMs + 1) * periodMs - offset;
+    }
+
+    // For the standalone loops: how long to sleep so the next iteration starts on a boundary
+    public static long millisUntilNextBoundary(long periodMs) {
+        long now = System.currentTimeMillis();
+        return nextBoundary(now, periodMs) - now;
+    }
+
+    public class Ticker {
+        private final String name;
+        private final long periodMs;
+        private final MarketHours hours;
+        private final Job job;
+        private final AtomicBoolean running = new AtomicBoolean();
+        private final AtomicLong fired = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final LatencyHistogram lateness = new LatencyHistogram();
+
+        Ticker(String name, long periodMs, MarketHours hours, Job job) {
+            this.name = name;
+            this.periodMs = periodMs;
+            this.hours = hours;
+            this.job = job;
+        }
+
+        private void scheduleNext(long afterMs) {
+            long target = nextBoundary(afterMs, periodMs);
+            if (hours != null) {
+                LocalDateTime at = LocalDateTime.ofInstant(Instant.ofEpochMilli(target), ZoneId.systemDefault());
+                if (!hours.isOpen(at)) {
+                    // Aligns to the session open itself, then to boundaries from there
+                    target = target + hours.millisUntilNextOpen(at);
+                }
+            }
+            long fireAt = target;
+            long delay = Math.max(0, fireAt - System.currentTimeMillis());
+            try {
+                timer.schedule(() -> fire(fireAt), delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Scheduler shut down
+            }
+        }
+
+        private void fire(long target) {
+            long now = System.currentTimeMillis();
+            lateness.record(Math.max(0, now - target));
+            // Next tick is booked before the work starts; if we woke up late it goes to the next boundary after now
+            scheduleNext(Math.max(target, now));
+
+            if (!running.compareAndSet(false, true)) {
+                skipped.incrementAndGet();
+                System.err.println("Tick " + name + " skipped: previous run still in progress.");
+                return;
+            }
+            fired.incrementAndGet();
+            try {
+                workers.execute(this::runJob);
+            } catch (RejectedExecutionException e) {
+                running.set(false);
+            }
+        }
+
+        // A job that throws must not stop the ticks, so every failure is caught here
+        private void runJob() {
+            try {
+                job.run();
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                System.err.println("Job " + name + " failed: " + e.getMessage());
+            } finally {
+                running.set(false);
+            }
+        }
+
+        public String summary() {
+            return String.format("Tick %s every %dms: fired=%d skipped=%d failed=%d lateness %s",
+                    name, periodMs, fired.get(), skipped.get(), failed.get(), lateness.summary());
+        }
+    }
+}
@@ -0,0 +1,161 @@
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+// Partitioned layout for the intraday transaction_data ticks, enabled with -Dtick.storage=partitioned.
+// One RANGE partition per day on TO_DAYS(timestamp) with PRIMARY KEY (timestamp, symbol), so the session's
+// inserts append to a single small partition and day rollover is a metadata-only DROP PARTITION instead of
+// a row-by-row DELETE. With -Dtick.storage.archive=true a finished day is first swapped out with
+// EXCHANGE PARTITION into its own transaction_data_pYYYYMMDD table rather than thrown away.
+public class TickStorage {
+
+    static final boolean ENABLED = "partitioned".equalsIgnoreCase(System.getProperty("tick.storage", ""));
+    private static final boolean ARCHIVE = Boolean.getBoolean("tick.storage.archive");
+    // Days kept before today, and empty partitions created ahead so inserts never land in pmax
+    private static final int RETAIN_DAYS = Integer.getInteger("tick.storage.retainDays", 0);
+    private static final int DAYS_AHEAD = Integer.getInteger("tick.storage.daysAhead", 3);
+
+    private static final String TABLE = "transaction_data";
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'p'yyyyMMdd");
+
+    // timestamp is DATETIME because MySQL only allows TO_DAYS() partitioning on DATE/DATETIME columns
+    public static void createTable(Connection conn, LocalDate today) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS " + TABLE + " (" +
+                    "timestamp DATETIME NOT NULL," +
+                    "symbol VARCHAR(255) NOT NULL," +
+                    "ltp DECIMAL(10,2)," +
+                    "pointChange VARCHAR(20)," +
+                    "perChange VARCHAR(20)," +
+                    "open DECIMAL(10,2)," +
+                    "high DECIMAL(10,2)," +
+                    "low DECIMAL(10,2)," +
+                    "vol DECIMAL(20,2)," +
+                    "prev_close DECIMAL(10,2)," +
+                    "PRIMARY KEY (timestamp, symbol)," +
+                    "KEY idx_symbol_timestamp (symbol, timestamp)" +
+                    ") PARTITION BY RANGE (TO_DAYS(timestamp)) (" +
+                    partitionDefinition(today) + ", " +
+                    "PARTITION pmax VALUES LESS THAN MAXVALUE)");
+        }
+        if (isPartitioned(conn)) {
+            addPartitions(conn, today);
+        } else {
+            System.err.println(TABLE + " already exists without partitions; falling back to DELETE at rollover. " +
+                    "Rename or drop the old table to switch to partitioned tick storage.");
+        }
+    }
+
+    public static boolean isPartitioned(Connection conn) throws SQLException {
+        return !partitionDays(conn).isEmpty();
+    }
+
+    // Day rollover: makes sure today and the next few days have partitions, then drops (or archives) the expired ones
+    public static void rollover(Connection conn, LocalDate today) throws SQLException {
+        long start = System.nanoTime();
+        addPartitions(conn, today);
+        LocalDate oldestKept = today.minusDays(RETAIN_DAYS);
+        int removed = 0;
+        for (LocalDate day : partitionDays(conn)) {
+            if (day.isBefore(oldestKept)) {
+                if (ARCHIVE) {
+                    archivePartition(conn, day);
+                }
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.executeUpdate("ALTER TABLE " + TABLE + " DROP PARTITION " + day.format(PARTITION_NAME));
+                }
+                removed++;
+            }
+        }
+        System.out.println("Tick storage rolled over to " + today + ": " + removed + " partitions " +
+                (ARCHIVE ? "archived" : "dropped") + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    private static void addPartitions(Connection conn, LocalDate today) throws SQLException {
+        List<LocalDate> existing = partitionDays(conn);
+        LocalDate last = existing.isEmpty() ? today.minusDays(1) : existing.get(existing.size() - 1);
+        StringBuilder partitions = new StringBuilder();
+        for (LocalDate day = last.plusDays(1); !day.isAfter(today.plusDays(DAYS_AHEAD)); day = day.plusDays(1)) {
+            partitions.append(partitionDefinition(day)).append(", ");
+        }
+        if (partitions.length() == 0) {
+            return;
+        }
+        // pmax is empty while partitions exist ahead of today, so splitting it moves no rows
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE " + TABLE + " REORGANIZE PARTITION pmax INTO (" +
+                    partitions + "PARTITION pmax VALUES LESS THAN MAXVALUE)");
+        }
+    }
+
+    // Swaps the day's rows into a standalone table of the same shape; the emptied partition is dropped afterwards.
+    // An archive table left by an earlier attempt whose DROP PARTITION failed already holds the day's rows, so the
+    // swap is skipped when the partition is empty (swapping would put them back, to be dropped for good); rows on
+    // both sides cannot be merged safely and stop the rollover.
+    private static void archivePartition(Connection conn, LocalDate day) throws SQLException {
+        String partition = day.format(PARTITION_NAME);
+        String archive = TABLE + "_" + partition;
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS " + archive + " LIKE " + TABLE);
+            // Only a freshly created copy is partitioned; one left by an earlier attempt already is not
+            if (partitionCount(conn, archive) > 0) {
+                stmt.executeUpdate("ALTER TABLE " + archive + " REMOVE PARTITIONING");
+            }
+            boolean archived = hasRows(stmt, "SELECT 1 FROM " + archive + " LIMIT 1");
+            boolean pending = hasRows(stmt, "SELECT 1 FROM " + TABLE + " PARTITION (" + partition + ") LIMIT 1");
+            if (archived && pending) {
+                throw new SQLException("Both " + archive + " and partition " + partition + " of " + TABLE +
+                        " hold rows; merge them by hand before the partition can be archived.");
+            }
+            if (archived) {
+                System.out.println(archive + " already holds partition " + partition + " from an earlier rollover.");
+                return;
+            }
+            stmt.executeUpdate("ALTER TABLE " + TABLE + " EXCHANGE PARTITION " + partition + " WITH TABLE " + archive);
+        }
+        System.out.println("Archived " + TABLE + " partition " + partition + " to " + archive + ".");
+    }
+
+    private static String partitionDefinition(LocalDate day) {
+        return "PARTITION " + day.format(PARTITION_NAME) + " VALUES LESS THAN (TO_DAYS('" + day.plusDays(1) + "'))";
+    }
+
+    private static boolean hasRows(Statement stmt, String sql) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next();
+        }
+    }
+
+    private static int partitionCount(Connection conn, String table) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM information_schema.PARTITIONS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, table);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    // Days of the pYYYYMMDD partitions in order; empty when the table is not partitioned
+    private static List<LocalDate> partitionDays(Connection conn) throws SQLException {
+        List<LocalDate> days = new ArrayList<>();
+        String sql = "SELECT PARTITION_NAME FROM information_schema.PARTITIONS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL " +
+                "ORDER BY PARTITION_ORDINAL_POSITION";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, TABLE);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    String name = rs.getString(1);
+                    if (!name.equals("pmax")) {
+                        days.add(LocalDate.parse(name, PARTITION_NAME));
+                    }
+                }
+            }
+        }
+        return days;
+    }
+}
@@ -0,0 +1,198 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// All-symbols VaR batch as a three-stage pipeline: the calling thread streams every symbol's close prices in
+// one scan, each series becomes a task on the shared ComputePool (which in turn splits its paths across the
+// same pool), and a writer thread inserts finished rows in batched transactions. What is computed and where it
+// is stored is a Calculation: VAR_OF_ALL (varofall_data, the startup batch) or HistoricalVaR.COMPARISON.
+// At most var.batch.inFlight series are loaded but not yet simulated, so memory stays bounded.
+public class VaRBatchRunner {
+
+    private static final int IN_FLIGHT = Integer.getInteger("var.batch.inFlight", ComputePool.parallelism() * 2);
+    private static final int WRITE_BATCH = Integer.getInteger("var.batch.writeSize", 100);
+
+    interface Calculation {
+        void createTable(String url, String user, String password) throws Exception;
+
+        String insertSql();
+
+        // Values bound to insertSql's placeholders in order, or null (after saying why) to skip the symbol
+        Object[] compute(ReturnSeriesCache.Series series, int daysOfInvestment, double confidenceLevel) throws Exception;
+    }
+
+    // GBM VaR per symbol into varofall_data, as calculateAndStoreVaR(..., true) stores it
+    static final Calculation VAR_OF_ALL = new Calculation() {
+        @Override
+        public void createTable(String url, String user, String password) throws Exception {
+            MonteCarloVaR.createVarOfAllDataTable(url, user, password);
+        }
+
+        @Override
+        public String insertSql() {
+            return "INSERT INTO varofall_data (stock_symbol, days_of_investment, mean_return, volatility, var, initial_stock_price, confidence_level) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?)";
+        }
+
+        @Override
+        public Object[] compute(ReturnSeriesCache.Series series, int daysOfInvestment, double confidenceLevel) throws Exception {
+            if (series.size() == 0) {
+                System.out.println("No data available for the given stock symbol: " + series.symbol);
+                return null;
+            }
+            ReturnSeriesCache.Stats stats = series.stats(daysOfInvestment);
+            int days = stats.days;
+            double initialStockPrice = series.lastClose();
+            double meanReturn = stats.meanReturn;
+            double volatility = stats.volatility;
+            double var = MonteCarloVaR.calculateVaR(initialStockPrice, meanReturn, volatility, days, MonteCarloEngine.NUM_SIMULATIONS, confidenceLevel);
+
+            if (Double.isNaN(meanReturn) || Double.isNaN(volatility) || Double.isNaN(var) || Double.isNaN(initialStockPrice)) {
+                System.out.printf("Skipping stock symbol %s due to NaN values in calculations.%n", series.symbol);
+                return null;
+            }
+            return new Object[]{series.symbol, days, meanReturn, volatility, var, initialStockPrice, confidenceLevel};
+        }
+    };
+
+    private static final Object[] END = new Object[0];
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final Calculation calculation;
+    private final int fixedDays;
+    private final double fixedConfidenceLevel;
+    private final BlockingQueue<Object[]> results = new ArrayBlockingQueue<>(1024);
+    private final Semaphore inFlight = new Semaphore(IN_FLIGHT);
+    private final AtomicInteger computed = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicInteger written = new AtomicInteger();
+    private final AtomicLong computeNanos = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+
+    public VaRBatchRunner(String url, String user, String password) {
+        this(url, user, password, VAR_OF_ALL, 0, 0);
+    }
+
+    // days <= 0 draws a random horizon (10-100 days) and confidence (0.9-1.0) per symbol, as the startup batch always did
+    public VaRBatchRunner(String url, String user, String password, Calculation calculation, int days, double confidenceLevel) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.calculation = calculation;
+        this.fixedDays = days;
+        this.fixedConfidenceLevel = confidenceLevel;
+    }
+
+    public void run() throws Exception {
+        long start = System.nanoTime();
+        calculation.createTable(url, user, password);
+        Thread writer = new Thread(this::writeResults, "var-batch-writer");
+        writer.start();
+
+        Random random = new Random();
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        int loaded;
+        try (Connection conn = ConnectionPool.getConnection(url, user, password)) {
+            loaded = OhlcvStore.forEachCloseSeries(conn, series -> {
+                ReturnSeriesCache.put(series);
+                int days = fixedDays > 0 ? fixedDays : 10 + random.nextInt(91);
+                double confidenceLevel = fixedDays > 0 ? fixedConfidenceLevel : 0.9 + (0.1 * random.nextDouble());
+                inFlight.acquire();
+                tasks.add(CompletableFuture.runAsync(() -> compute(series, days, confidenceLevel), ComputePool.pool()));
+            });
+        }
+        long loadMs = (System.nanoTime() - start) / 1_000_000;
+
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+        results.put(END);
+        writer.join();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("VaR batch: %d symbols loaded (stream done after %d ms), %d computed, %d skipped, %d written in %.1f s " +
+                        "(%.1f symbols/s, compute %.1f s CPU, writes %.1f s)%n",
+                loaded, loadMs, computed.get(), skipped.get(), written.get(), seconds, computed.get() / seconds,
+                computeNanos.get() / 1e9, writeNanos.get() / 1e9);
+        System.out.println(ComputePool.stats());
+        System.out.println(ReturnSeriesCache.stats());
+    }
+
+    private void compute(ReturnSeriesCache.Series series, int daysOfInvestment, double confidenceLevel) {
+        long start = System.nanoTime();
+        try {
+            Object[] row = calculation.compute(series, daysOfInvestment, confidenceLevel);
+            if (row == null) {
+                skipped.incrementAndGet();
+                return;
+            }
+            results.put(row);
+            computed.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Error calculating VaR for " + series.symbol + ": " + e.getMessage());
+            skipped.incrementAndGet();
+        } finally {
+            computeNanos.addAndGet(System.nanoTime() - start);
+            inFlight.release();
+        }
+    }
+
+    // Drains whatever results are ready (up to var.batch.writeSize) into one transaction at a time
+    private void writeResults() {
+        List<Object[]> batch = new ArrayList<>(WRITE_BATCH);
+        boolean done = false;
+        while (!done) {
+            try {
+                batch.add(results.take());
+                results.drainTo(batch, WRITE_BATCH - 1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            done = batch.remove(END);
+            if (!batch.isEmpty()) {
+                long start = System.nanoTime();
+                try {
+                    written.addAndGet(insertBatch(batch));
+                } catch (SQLException e) {
+                    System.err.println("Error storing " + batch.size() + " VaR results: " + e.getMessage());
+                }
+                writeNanos.addAndGet(System.nanoTime() - start);
+                batch.clear();
+            }
+        }
+    }
+
+    private int insertBatch(List<Object[]> batch) throws SQLException {
+        try (Connection conn = ConnectionPool.getConnection(url, user, password)) {
+            conn.setAutoCommit(false);
+            try {
+                int count = BulkUpsertWriter.executeBatched(conn, calculation.insertSql(), batch, VaRBatchRunner::bind);
+                conn.commit();
+                return count;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static void bind(PreparedStatement pstmt, Object[] row) throws SQLException {
+        for (int i = 0; i < row.length; i++) {
+            pstmt.setObject(i + 1, row[i]);
+        }
+    }
+}
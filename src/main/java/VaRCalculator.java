@@ -0,0 +1,228 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// VaR of the GBM horizon log return by a selectable method (-Dvar.method=..., default MONTE_CARLO).
+// Under GBM the horizon return is exactly normal with mean days*(mu - sigma^2/2)*dt and standard deviation
+// sigma*sqrt(days*dt), so apart from MONTE_CARLO (which keeps the step-by-step paths) the methods draw one
+// number per path. The sampling methods run var.replicates independent replicates and report the standard
+// error of the pooled estimate as the spread of the replicate estimates over sqrt(replicates).
+public class VaRCalculator {
+
+    public enum Method {
+        // Closed-form quantile of the normal horizon return; no sampling error
+        PARAMETRIC,
+        // Step-by-step GBM paths from MonteCarloEngine
+        MONTE_CARLO,
+        // Each normal draw z is used together with -z
+        ANTITHETIC,
+        // Randomly shifted van der Corput (one-dimensional Sobol) points through the inverse normal CDF
+        SOBOL,
+        // Pseudo-random draws with the empirical CDF reweighted so the sample mean matches the known mean
+        CONTROL_VARIATE
+    }
+
+    static final Method DEFAULT_METHOD = Method.valueOf(System.getProperty("var.method", "MONTE_CARLO").toUpperCase());
+    private static final int REPLICATES = Integer.getInteger("var.replicates", 10);
+    // How tailRisk() summarizes the paths: TAIL keeps the merged lower tail, SKETCH only P-square markers
+    private static final String QUANTILE_MODE = System.getProperty("var.quantileMode", "TAIL").toUpperCase();
+    // P-square sketches per confidence level used to integrate the tail for Expected Shortfall in SKETCH mode
+    private static final int ES_SKETCHES = 8;
+
+    public static class Estimate {
+        final Method method;
+        final double var;
+        final double standardError;
+        final int paths;
+
+        Estimate(Method method, double var, double standardError, int paths) {
+            this.method = method;
+            this.var = var;
+            this.standardError = standardError;
+            this.paths = paths;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s VaR %.4f (standard error %.4f, %d paths)", method, var, standardError, paths);
+        }
+    }
+
+    // VaR and Expected Shortfall (as losses) at each confidence level, from one run of step-by-step paths
+    public static class TailRisk {
+        final double[] confidenceLevels;
+        final double[] var;
+        final double[] expectedShortfall;
+
+        TailRisk(double[] confidenceLevels) {
+            this.confidenceLevels = confidenceLevels;
+            this.var = new double[confidenceLevels.length];
+            this.expectedShortfall = new double[confidenceLevels.length];
+        }
+    }
+
+    public static TailRisk tailRisk(double initialStockPrice, double meanReturn, double volatility, int daysOfInvestment,
+                                    int numSimulations, double... confidenceLevels) throws Exception {
+        long seed = MonteCarloEngine.nextSeed();
+
+        if (QUANTILE_MODE.equals("SKETCH")) {
+            TailRisk risk = new TailRisk(confidenceLevels);
+            // Per level: one sketch at alpha, and ES as the midpoint rule over sketches at alpha*(j+0.5)/m
+            Quantiles.P2[] sketches = new Quantiles.P2[confidenceLevels.length * (ES_SKETCHES + 1)];
+            for (int c = 0; c < confidenceLevels.length; c++) {
+                double alpha = 1 - confidenceLevels[c];
+                sketches[c * (ES_SKETCHES + 1)] = new Quantiles.P2(alpha);
+                for (int j = 0; j < ES_SKETCHES; j++) {
+                    sketches[c * (ES_SKETCHES + 1) + 1 + j] = new Quantiles.P2(alpha * (j + 0.5) / ES_SKETCHES);
+                }
+            }
+            MonteCarloEngine.simulateInto(meanReturn, volatility, daysOfInvestment, numSimulations, seed, sketches);
+            for (int c = 0; c < confidenceLevels.length; c++) {
+                risk.var[c] = initialStockPrice * -sketches[c * (ES_SKETCHES + 1)].value();
+                double tail = 0;
+                for (int j = 0; j < ES_SKETCHES; j++) {
+                    tail += sketches[c * (ES_SKETCHES + 1) + 1 + j].value();
+                }
+                risk.expectedShortfall[c] = initialStockPrice * -(tail / ES_SKETCHES);
+            }
+            return risk;
+        }
+
+        double maxAlpha = 0;
+        for (double level : confidenceLevels) {
+            maxAlpha = Math.max(maxAlpha, 1 - level);
+        }
+        double[] tail = MonteCarloEngine.simulateTail(meanReturn, volatility, daysOfInvestment, numSimulations, seed, maxAlpha);
+        return fromTail(tail, numSimulations, initialStockPrice, confidenceLevels);
+    }
+
+    // VaR and ES from the ascending lower tail of n simulated (or historical) horizon log returns
+    static TailRisk fromTail(double[] tail, int n, double initialStockPrice, double... confidenceLevels) {
+        TailRisk risk = new TailRisk(confidenceLevels);
+        for (int c = 0; c < confidenceLevels.length; c++) {
+            int k = Math.min(tail.length - 1, Quantiles.index(1 - confidenceLevels[c], n));
+            double sum = 0;
+            for (int i = 0; i <= k; i++) {
+                sum += tail[i];
+            }
+            risk.var[c] = initialStockPrice * -tail[k];
+            risk.expectedShortfall[c] = initialStockPrice * -(sum / (k + 1));
+        }
+        return risk;
+    }
+
+    public static Estimate estimate(Method method, double initialStockPrice, double meanReturn, double volatility,
+                                    int daysOfInvestment, int numSimulations, double confidenceLevel) throws Exception {
+        double alpha = 1 - confidenceLevel;
+        double mean = daysOfInvestment * (meanReturn - 0.5 * volatility * volatility) * MonteCarloEngine.DT;
+        double stdDev = volatility * Math.sqrt(daysOfInvestment * MonteCarloEngine.DT);
+
+        if (method == Method.PARAMETRIC) {
+            double varReturn = mean + stdDev * NormalDist.inverseCdf(alpha);
+            return new Estimate(method, initialStockPrice * -varReturn, 0, 0);
+        }
+
+        int replicates = Math.max(2, Math.min(REPLICATES, numSimulations / 2));
+        SplittableRandom root = new SplittableRandom(MonteCarloEngine.nextSeed());
+        double[] pooled = method == Method.MONTE_CARLO
+                ? MonteCarloEngine.simulateReturns(meanReturn, volatility, daysOfInvestment, numSimulations, root.nextLong())
+                : new double[numSimulations];
+        double[] replicateQuantiles = new double[replicates];
+
+        for (int r = 0; r < replicates; r++) {
+            int from = (int) ((long) numSimulations * r / replicates);
+            int to = (int) ((long) numSimulations * (r + 1) / replicates);
+            SplittableRandom random = root.split();
+            switch (method) {
+                case ANTITHETIC:
+                    fillAntithetic(pooled, from, to, mean, stdDev, random);
+                    break;
+                case SOBOL:
+                    fillShiftedVanDerCorput(pooled, from, to, mean, stdDev, random.nextDouble());
+                    break;
+                case CONTROL_VARIATE:
+                    for (int i = from; i < to; i++) {
+                        pooled[i] = mean + stdDev * random.nextGaussian();
+                    }
+                    break;
+                default:
+                    break;
+            }
+            double[] replicate = Arrays.copyOfRange(pooled, from, to);
+            replicateQuantiles[r] = method == Method.CONTROL_VARIATE
+                    ? controlVariateQuantile(replicate, mean, alpha)
+                    : quantile(replicate, alpha);
+        }
+
+        double varReturn = method == Method.CONTROL_VARIATE
+                ? controlVariateQuantile(pooled, mean, alpha)
+                : quantile(pooled, alpha);
+        double standardError = standardDeviation(replicateQuantiles) / Math.sqrt(replicates);
+        return new Estimate(method, initialStockPrice * -varReturn, initialStockPrice * standardError, numSimulations);
+    }
+
+    private static void fillAntithetic(double[] returns, int from, int to, double mean, double stdDev, SplittableRandom random) {
+        for (int i = from; i < to; i += 2) {
+            double shock = stdDev * random.nextGaussian();
+            returns[i] = mean + shock;
+            if (i + 1 < to) {
+                returns[i + 1] = mean - shock;
+            }
+        }
+    }
+
+    // Base-2 radical inverse of 1..n shifted modulo 1 (Cranley-Patterson), so each replicate is an unbiased estimate
+    private static void fillShiftedVanDerCorput(double[] returns, int from, int to, double mean, double stdDev, double shift) {
+        for (int i = from; i < to; i++) {
+            double u = (Integer.reverse(i - from + 1) & 0xffffffffL) / 4294967296.0 + shift;
+            if (u >= 1) {
+                u -= 1;
+            }
+            returns[i] = mean + stdDev * NormalDist.inverseCdf(Math.max(u, Double.MIN_VALUE));
+        }
+    }
+
+    // The alpha quantile by selection, at the same index the original sort-based VaR read; reorders values
+    static double quantile(double[] values, double alpha) {
+        return Quantiles.quantile(values, alpha);
+    }
+
+    // Weighted empirical CDF with the return itself as control variate (known mean): the weights
+    // w_i = 1/n + (mean - avg)(x_i - avg) / sum (x_j - avg)^2 sum to 1 and make the weighted sample mean exact.
+    // Sorts in place and returns the first value where the cumulative weight reaches alpha.
+    static double controlVariateQuantile(double[] values, double knownMean, double alpha) {
+        int n = values.length;
+        double avg = 0;
+        for (double v : values) {
+            avg += v;
+        }
+        avg /= n;
+        double sumSquares = 0;
+        for (double v : values) {
+            sumSquares += (v - avg) * (v - avg);
+        }
+        double beta = sumSquares > 0 ? (knownMean - avg) / sumSquares : 0;
+
+        Arrays.sort(values);
+        double cumulative = 0;
+        for (double v : values) {
+            cumulative += 1.0 / n + beta * (v - avg);
+            if (cumulative >= alpha) {
+                return v;
+            }
+        }
+        return values[n - 1];
+    }
+
+    private static double standardDeviation(double[] values) {
+        double mean = 0;
+        for (double v : values) {
+            mean += v;
+        }
+        mean /= values.length;
+        double sum = 0;
+        for (double v : values) {
+            sum += (v - mean) * (v - mean);
+        }
+        return Math.sqrt(sum / (values.length - 1));
+    }
+}
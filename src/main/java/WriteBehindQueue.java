@@ -0,0 +1,279 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Bounded ring buffer of row batches between the scraping thread and a single MySQL writer thread, so a
+// slow commit no longer holds up the next fetch. What happens when the buffer is full is the Policy.
+public class WriteBehindQueue<T extends FingerprintedRow> {
+
+    public enum Policy {
+        // Producer waits for the writer (no data loss, fetches slow down with the database)
+        BLOCK,
+        // Oldest pending batch is discarded to make room
+        DROP_OLDEST,
+        // New batch is merged into the newest pending one, keeping the latest row per symbol (each row is
+        // still written with the tick time it was scraped at)
+        COALESCE_BY_SYMBOL
+    }
+
+    interface BatchWriter<T> {
+        void write(List<T> rows, long tickMillis) throws Exception;
+    }
+
+    // Defaults, overridable with -DwriteBehind.capacity=... and -DwriteBehind.policy=DROP_OLDEST
+    private static final int DEFAULT_CAPACITY = Integer.getInteger("writeBehind.capacity", 16);
+    private static final Policy DEFAULT_POLICY = Policy.valueOf(System.getProperty("writeBehind.policy", "BLOCK"));
+    private static final long FLUSH_TIMEOUT_MS = Long.getLong("writeBehind.flushTimeoutMs", 60000);
+
+    private static final List<WriteBehindQueue<?>> QUEUES = new CopyOnWriteArrayList<>();
+
+    private final String name;
+    private final Policy policy;
+    private final BatchWriter<T> writer;
+    private final Batch<T>[] ring;
+    private int head;
+    private int count;
+    private boolean writing;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition idle = lock.newCondition();
+
+    // Metrics
+    private final AtomicLong enqueuedRows = new AtomicLong();
+    private final AtomicLong writtenRows = new AtomicLong();
+    private final AtomicLong droppedRows = new AtomicLong();
+    private final AtomicLong coalescedRows = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong blockedNanos = new AtomicLong();
+    private int maxDepth;
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public WriteBehindQueue(String name, BatchWriter<T> writer) {
+        this(name, DEFAULT_CAPACITY, DEFAULT_POLICY, writer);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public WriteBehindQueue(String name, int capacity, Policy policy, BatchWriter<T> writer) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Write-behind " + name + " capacity must be positive: " + capacity);
+        }
+        this.name = name;
+        this.policy = policy;
+        this.writer = writer;
+        this.ring = (Batch<T>[]) new Batch[capacity];
+        Thread thread = new Thread(this::drainLoop, "write-behind-" + name);
+        thread.setDaemon(true);
+        thread.start();
+        QUEUES.add(this);
+    }
+
+    public static void printAllStats() {
+        QUEUES.forEach(queue -> System.out.println(queue.stats()));
+    }
+
+    // Hands a tick's rows to the writer thread; returns without waiting unless the policy is BLOCK and the ring is full
+    public void submit(List<T> rows, long tickMillis) throws InterruptedException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        Batch<T> batch = new Batch<>(rows, tickMillis, System.nanoTime());
+        lock.lock();
+        try {
+            if (count == ring.length) {
+                switch (policy) {
+                    case BLOCK:
+                        long start = System.nanoTime();
+                        while (count == ring.length) {
+                            notFull.await();
+                        }
+                        blockedNanos.addAndGet(System.nanoTime() - start);
+                        break;
+                    case DROP_OLDEST:
+                        Batch<T> dropped = ring[head];
+                        ring[head] = null;
+                        head = (head + 1) % ring.length;
+                        count--;
+                        droppedRows.addAndGet(dropped.rows.size());
+                        System.err.println("Write-behind " + name + " full: dropped batch of " + dropped.rows.size() + " rows.");
+                        break;
+                    case COALESCE_BY_SYMBOL:
+                        int newest = (head + count - 1) % ring.length;
+                        ring[newest] = coalesce(ring[newest], batch);
+                        enqueuedRows.addAndGet(rows.size());
+                        return;
+                    default:
+                        break;
+                }
+            }
+            ring[(head + count) % ring.length] = batch;
+            count++;
+            maxDepth = Math.max(maxDepth, count);
+            enqueuedRows.addAndGet(rows.size());
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Waits until everything submitted so far has been written (or failed), e.g. before end-of-day work
+    public boolean flush() throws InterruptedException {
+        boolean drained = flush(FLUSH_TIMEOUT_MS);
+        if (!drained) {
+            System.err.println("Write-behind " + name + " still has " + depth() + " batches pending after " + FLUSH_TIMEOUT_MS + "ms.");
+        }
+        return drained;
+    }
+
+    public boolean flush(long timeoutMs) throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        lock.lock();
+        try {
+            while (count > 0 || writing) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = idle.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int depth() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String stats() {
+        return String.format("Write-behind %s (%s): depth=%d/%d maxDepth=%d enqueued=%d written=%d dropped=%d coalesced=%d "
+                        + "failedBatches=%d producerBlocked=%dms latency %s",
+                name, policy, depth(), ring.length, maxDepth, enqueuedRows.get(), writtenRows.get(), droppedRows.get(),
+                coalescedRows.get(), failedBatches.get(), blockedNanos.get() / 1000000, latency.summary());
+    }
+
+    // Latest row wins per symbol and carries its own tick time; the merged batch keeps the older enqueue time
+    // so latency stays honest
+    private Batch<T> coalesce(Batch<T> pending, Batch<T> incoming) {
+        Map<String, Integer> positions = new HashMap<>();
+        List<T> rows = new ArrayList<>(pending.rows.size() + incoming.rows.size());
+        long[] ticks = new long[pending.rows.size() + incoming.rows.size()];
+        for (Batch<T> batch : List.of(pending, incoming)) {
+            for (int i = 0; i < batch.rows.size(); i++) {
+                T row = batch.rows.get(i);
+                Integer position = positions.get(row.getSymbol());
+                if (position == null) {
+                    positions.put(row.getSymbol(), rows.size());
+                    ticks[rows.size()] = batch.tickMillis(i);
+                    rows.add(row);
+                } else {
+                    rows.set(position, row);
+                    ticks[position] = batch.tickMillis(i);
+                    if (batch == incoming) {
+                        coalescedRows.incrementAndGet();
+                    }
+                }
+            }
+        }
+        return new Batch<>(rows, Arrays.copyOf(ticks, rows.size()), pending.enqueuedNanos);
+    }
+
+    // One writer call per tick time in the batch, oldest first, so transaction_data keeps each row's own tick
+    private void write(Batch<T> batch) throws Exception {
+        if (batch.rowTicks == null) {
+            writer.write(batch.rows, batch.tickMillis);
+            return;
+        }
+        Map<Long, List<T>> byTick = new LinkedHashMap<>();
+        for (int i = 0; i < batch.rows.size(); i++) {
+            byTick.computeIfAbsent(batch.rowTicks[i], tick -> new ArrayList<>()).add(batch.rows.get(i));
+        }
+        List<Long> tickOrder = new ArrayList<>(byTick.keySet());
+        tickOrder.sort(null);
+        for (Long tick : tickOrder) {
+            writer.write(byTick.get(tick), tick);
+        }
+    }
+
+    private void drainLoop() {
+        while (true) {
+            Batch<T> batch;
+            lock.lock();
+            try {
+                while (count == 0) {
+                    notEmpty.await();
+                }
+                batch = ring[head];
+                ring[head] = null;
+                head = (head + 1) % ring.length;
+                count--;
+                writing = true;
+                notFull.signal();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                write(batch);
+                writtenRows.addAndGet(batch.rows.size());
+            } catch (Exception e) {
+                failedBatches.incrementAndGet();
+                System.err.println("Write-behind " + name + " failed to write " + batch.rows.size() + " rows: " + e.getMessage());
+            } finally {
+                latency.record((System.nanoTime() - batch.enqueuedNanos) / 1000000);
+                lock.lock();
+                try {
+                    writing = false;
+                    if (count == 0) {
+                        idle.signalAll();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    private static class Batch<T> {
+        final List<T> rows;
+        final long tickMillis;
+        // Tick time of each row once batches of different ticks have been coalesced, otherwise null
+        final long[] rowTicks;
+        final long enqueuedNanos;
+
+        Batch(List<T> rows, long tickMillis, long enqueuedNanos) {
+            this.rows = rows;
+            this.tickMillis = tickMillis;
+            this.rowTicks = null;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+
+        Batch(List<T> rows, long[] rowTicks, long enqueuedNanos) {
+            this.rows = rows;
+            this.tickMillis = Arrays.stream(rowTicks).max().orElse(0);
+            this.rowTicks = rowTicks;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+
+        long tickMillis(int row) {
+            return rowTicks != null ? rowTicks[row] : tickMillis;
+        }
+    }
+}
@@ -1,23 +1,15 @@
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
-
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.sql.*;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Base64;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 public class dailyData {
@@ -25,11 +17,13 @@ public class dailyData {
     private static final String DB_URL = "jdbc:mysql://localhost:3306/nepse_livedata";
     private static final String DB_USER = "root";
     private static final String DB_PASS = "";
-    private static final long INTERVAL = 60000;
+    private static final long INTERVAL = Long.getLong("collector.tickMs", 60000);
     private static final LocalTime START_OF_DAY = LocalTime.of(11, 00);
     private static final LocalTime END_OF_DAY = LocalTime.of(15, 01);
+    private static final MarketHours MARKET_HOURS = new MarketHours(START_OF_DAY, END_OF_DAY);
 
-    private static String lastHash = "";
+    private static final RowFingerprintCache fingerprints = new RowFingerprintCache();
+    private static final WriteBehindQueue<DailyRow> writeQueue = new WriteBehindQueue<>("dailyData", dailyData::writeChangedRows);
 
     public static void main(String[] args) {
         try {
@@ -43,37 +37,32 @@ public class dailyData {
         while (true) {
             try {
                 LocalTime now = LocalTime.now();
-                if (now.isBefore(START_OF_DAY) || now.isAfter(END_OF_DAY)) {
-                    if (now.isAfter(END_OF_DAY)) {
+                if (!MARKET_HOURS.isOpen(LocalDateTime.now())) {
+                    if (MarketHours.isTradingDay(LocalDate.now()) && now.isAfter(END_OF_DAY)) {
+                        writeQueue.flush();
                         storeLastUpdateOfTheDay();
                         System.out.println("Last update of the day recorded at " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
-                        lastHash = "";
+                        fingerprints.clear();
+                        HttpFetcher.forgetAll();
                     }
                     System.out.println("Market is closed. Sleeping until next check.");
+                    ConnectionPool.printAllStats();
+                    WriteBehindQueue.printAllStats();
+                    HttpFetcher.printStats();
                     Thread.sleep(getSleepDuration());
                     continue;
                 }
 
                 String currentDataURL = "https://www.sharesansar.com/today-share-price";
-                String content = fetchData(currentDataURL);
-                String currentHash = generateHash(content);
-
-                if (!currentHash.equals(lastHash)) {
-                    scrapeAndStoreData(content);
-                    lastHash = currentHash;
-                    LocalDateTime nowDateTime = LocalDateTime.now();
-                    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-                    String formattedNow = nowDateTime.format(formatter);
-                    System.out.println("Data updated successfully at " + formattedNow);
-                } else {
-                    System.out.println("Data remains the same. Skipping database update.");
-                }
+                storeChangedRows(fetchData(currentDataURL));
             } catch (Exception e) {
                 System.err.println("Error fetching or storing data: " + e.getMessage());
+                HttpFetcher.forgetAll();
             }
 
             try {
-                Thread.sleep(INTERVAL);
+                // Sleeps to the next wall-clock boundary so ticks stay evenly spaced whatever the work took
+                Thread.sleep(TickScheduler.millisUntilNextBoundary(INTERVAL));
             } catch (InterruptedException e) {
                 System.err.println("Thread interrupted: " + e.getMessage());
                 Thread.currentThread().interrupt();
@@ -81,37 +70,89 @@ public class dailyData {
         }
     }
 
-    private static long getSleepDuration() {
-        LocalTime now = LocalTime.now();
-        LocalTime nextStart = now.isBefore(START_OF_DAY) ? START_OF_DAY : START_OF_DAY.plusHours(24);
-        return now.isAfter(nextStart) ? java.time.Duration.between(nextStart, now).toMillis() : java.time.Duration.between(now, nextStart).toMillis();
+    // One tick: queues the rows whose values changed since they were last written
+    private static void storeChangedRows(List<DailyRow> rows) throws InterruptedException {
+        List<DailyRow> changedRows = fingerprints.changedRows(rows);
+
+        if (!changedRows.isEmpty()) {
+            writeQueue.submit(changedRows, System.currentTimeMillis());
+        } else {
+            System.out.println("Data remains the same. Skipping database update.");
+        }
+        System.out.println(fingerprints.endTick());
     }
 
-    private static String fetchData(String urlStr) throws IOException {
-        StringBuilder result = new StringBuilder();
-        URL url = new URL(urlStr);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("GET");
-        conn.setRequestProperty("User-Agent", "Mozilla/5.0");
+    // Runs on the write-behind thread; fingerprints are committed only once the rows are in the database
+    private static void writeChangedRows(List<DailyRow> rows, long tickMillis) throws SQLException {
+        try {
+            scrapeAndStoreData(rows);
+        } catch (SQLException e) {
+            HttpFetcher.forgetAll();
+            throw e;
+        }
+        fingerprints.commit(rows);
+        String formattedNow = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        System.out.println("Data updated successfully at " + formattedNow);
+    }
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                result.append(line);
+    // Hooks for running this collector inside CollectorDaemon instead of its own loop
+    static RowSink sink() {
+        return new RowSink() {
+            @Override
+            public String name() {
+                return "dailyData";
             }
-        }
-        return result.toString();
+
+            @Override
+            public MarketHours marketHours() {
+                return MARKET_HOURS;
+            }
+
+            @Override
+            public void init() throws SQLException {
+                createTableIfNotExists();
+            }
+
+            @Override
+            public void onRows(List<String[]> rows) throws InterruptedException {
+                storeChangedRows(TableRowExtractor.mapRows(rows, dailyData::toDailyRow));
+            }
+
+            @Override
+            public void onMarketClose() throws Exception {
+                writeQueue.flush();
+                storeLastUpdateOfTheDay();
+                fingerprints.clear();
+            }
+        };
+    }
+
+    private static long getSleepDuration() {
+        return MARKET_HOURS.millisUntilNextOpen(LocalDateTime.now());
     }
 
+    private static List<DailyRow> fetchData(String urlStr) throws IOException {
+        List<DailyRow> rows = new ArrayList<>();
+        InputStream body = HttpFetcher.fetch(urlStr);
+        if (body == null) {
+            System.out.println("Page not modified since last fetch: " + urlStr);
+            return rows;
+        }
 
-    private static String generateHash(String content) throws NoSuchAlgorithmException {
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        byte[] hash = digest.digest(content.getBytes(StandardCharsets.UTF_8));
-        return Base64.getEncoder().encodeToString(hash);
+        // The page is tokenized as it arrives; only the table rows are kept
+        try (Reader reader = new InputStreamReader(body, StandardCharsets.UTF_8)) {
+            TableRowExtractor.extract(reader, cells -> {
+                DailyRow row = toDailyRow(cells);
+                if (row != null) {
+                    rows.add(row);
+                }
+            });
+        }
+        return rows;
     }
 
     private static void createTableIfNotExists() throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASS);
+        try (Connection conn = ConnectionPool.getConnection(DB_URL, DB_USER, DB_PASS);
              Statement stmt = conn.createStatement()) {
 
             String dailyTableSQL = "CREATE TABLE IF NOT EXISTS daily_data (" +
@@ -143,115 +184,48 @@ public class dailyData {
         }
     }
 
-    private static void scrapeAndStoreData(String content) throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASS)) {
-            Document doc = Jsoup.parse(content);
-            for (Element row : doc.select("table.table tr")) {
-                Elements cells = row.select("td");
-
-                if (cells.size() < 2) {
-                    System.out.println("Skipping row with insufficient columns: " + row.text());
-                    continue;
-                }
-
-                String symbol = cells.get(1).text().trim();
-                if (symbol.isEmpty()) {
-                    System.out.println("Skipping row with empty symbol: " + row.text());
-                    continue;
-                }
+    private static DailyRow toDailyRow(String[] cells) {
+        if (cells.length < 2) {
+            System.out.println("Skipping row with insufficient columns: " + TableRowExtractor.rowText(cells));
+            return null;
+        }
 
-                while (cells.size() < 21) {
-                    cells.add(new Element("td").text("0"));
-                }
+        String symbol = cells[1].trim();
+        if (symbol.isEmpty()) {
+            System.out.println("Skipping row with empty symbol: " + TableRowExtractor.rowText(cells));
+            return null;
+        }
 
-                try {
-                    LocalDate date = LocalDate.now();
-                    double conf = parseDouble(cells.get(2).text());
-                    double open = parseDouble(cells.get(3).text());
-                    double high = parseDouble(cells.get(4).text());
-                    double low = parseDouble(cells.get(5).text());
-                    double close = parseDouble(cells.get(6).text());
-                    String vwap = cells.get(7).text();
-                    double vol = parseDouble(cells.get(8).text());
-                    double prevClose = parseDouble(cells.get(9).text());
-                    double turnover = parseDouble(cells.get(10).text());
-                    int trans = parseInt(cells.get(11).text());
-                    String diff = cells.get(12).text();
-                    double range = parseDouble(cells.get(13).text());
-                    String diffPerc = cells.get(14).text();
-                    double rangePerc = parseDouble(cells.get(15).text());
-                    String vwapPerc = cells.get(16).text();
-                    double days120 = parseDouble(cells.get(17).text());
-                    double days180 = parseDouble(cells.get(18).text());
-                    double weeks52High = parseDouble(cells.get(19).text());
-                    double weeks52Low = parseDouble(cells.get(20).text());
+        try {
+            return new DailyRow(LocalDate.now(), symbol,
+                    parseDouble(TableRowExtractor.cell(cells, 2)),
+                    parseDouble(TableRowExtractor.cell(cells, 3)),
+                    parseDouble(TableRowExtractor.cell(cells, 4)),
+                    parseDouble(TableRowExtractor.cell(cells, 5)),
+                    parseDouble(TableRowExtractor.cell(cells, 6)),
+                    TableRowExtractor.cell(cells, 7),
+                    parseDouble(TableRowExtractor.cell(cells, 8)),
+                    parseDouble(TableRowExtractor.cell(cells, 9)),
+                    parseDouble(TableRowExtractor.cell(cells, 10)),
+                    parseInt(TableRowExtractor.cell(cells, 11)),
+                    TableRowExtractor.cell(cells, 12),
+                    parseDouble(TableRowExtractor.cell(cells, 13)),
+                    TableRowExtractor.cell(cells, 14),
+                    parseDouble(TableRowExtractor.cell(cells, 15)),
+                    TableRowExtractor.cell(cells, 16),
+                    parseDouble(TableRowExtractor.cell(cells, 17)),
+                    parseDouble(TableRowExtractor.cell(cells, 18)),
+                    parseDouble(TableRowExtractor.cell(cells, 19)),
+                    parseDouble(TableRowExtractor.cell(cells, 20)));
+        } catch (NumberFormatException e) {
+            System.err.println("Skipping row due to number format error: " + e.getMessage() + " - Row data: " + TableRowExtractor.rowText(cells));
+            return null;
+        }
+    }
 
-                    String checkSql = "SELECT COUNT(*) FROM daily_data WHERE symbol = ?";
-                    try (PreparedStatement checkStmt = conn.prepareStatement(checkSql)) {
-                        checkStmt.setString(1, symbol);
-                        try (ResultSet rs = checkStmt.executeQuery()) {
-                            if (rs.next() && rs.getInt(1) > 0) {
-                                String updateSql = "UPDATE daily_data SET date = ?, conf = ?, open = ?, high = ?, low = ?, close = ?, vwap = ?, vol = ?, prev_close = ?, turnover = ?, trans = ?, diff = ?, `range` = ?, diff_perc = ?, range_perc = ?, vwap_perc = ?, days_120 = ?, days_180 = ?, weeks_52_high = ?, weeks_52_low = ? WHERE symbol = ?";
-                                try (PreparedStatement pstmt = conn.prepareStatement(updateSql)) {
-                                    pstmt.setObject(1, date);
-                                    pstmt.setDouble(2, conf);
-                                    pstmt.setDouble(3, open);
-                                    pstmt.setDouble(4, high);
-                                    pstmt.setDouble(5, low);
-                                    pstmt.setDouble(6, close);
-                                    pstmt.setString(7, vwap);
-                                    pstmt.setDouble(8, vol);
-                                    pstmt.setDouble(9, prevClose);
-                                    pstmt.setDouble(10, turnover);
-                                    pstmt.setInt(11, trans);
-                                    pstmt.setString(12, diff);
-                                    pstmt.setDouble(13, range);
-                                    pstmt.setString(14, diffPerc);
-                                    pstmt.setDouble(15, rangePerc);
-                                    pstmt.setString(16, vwapPerc);
-                                    pstmt.setDouble(17, days120);
-                                    pstmt.setDouble(18, days180);
-                                    pstmt.setDouble(19, weeks52High);
-                                    pstmt.setDouble(20, weeks52Low);
-                                    pstmt.setString(21, symbol);
-                                    pstmt.executeUpdate();
-                                }
-                            } else {
-                                String insertSql = "INSERT INTO daily_data (date, symbol, conf, open, high, low, close, vwap, vol, prev_close, turnover, trans, diff, `range`, diff_perc, range_perc, vwap_perc, days_120, days_180, weeks_52_high, weeks_52_low) " +
-                                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-                                try (PreparedStatement pstmt = conn.prepareStatement(insertSql)) {
-                                    pstmt.setObject(1, date);
-                                    pstmt.setString(2, symbol);
-                                    pstmt.setDouble(3, conf);
-                                    pstmt.setDouble(4, open);
-                                    pstmt.setDouble(5, high);
-                                    pstmt.setDouble(6, low);
-                                    pstmt.setDouble(7, close);
-                                    pstmt.setString(8, vwap);
-                                    pstmt.setDouble(9, vol);
-                                    pstmt.setDouble(10, prevClose);
-                                    pstmt.setDouble(11, turnover);
-                                    pstmt.setInt(12, trans);
-                                    pstmt.setString(13, diff);
-                                    pstmt.setDouble(14, range);
-                                    pstmt.setString(15, diffPerc);
-                                    pstmt.setDouble(16, rangePerc);
-                                    pstmt.setString(17, vwapPerc);
-                                    pstmt.setDouble(18, days120);
-                                    pstmt.setDouble(19, days180);
-                                    pstmt.setDouble(20, weeks52High);
-                                    pstmt.setDouble(21, weeks52Low);
-                                    pstmt.executeUpdate();
-                                }
-                            }
-                        }
-                    }
-                } catch (NumberFormatException e) {
-                    System.err.println("Skipping row due to number format error: " + e.getMessage() + " - Row data: " + row.text());
-                } catch (SQLException e) {
-                    System.err.println("SQL error while inserting row: " + e.getMessage() + " - Row data: " + row.text());
-                }
-            }
+    private static void scrapeAndStoreData(List<DailyRow> rows) throws SQLException {
+        try (Connection conn = ConnectionPool.getConnection(DB_URL, DB_USER, DB_PASS)) {
+            BulkUpsertWriter.upsertDailyData(conn, rows);
         }
     }
 
@@ -271,85 +245,17 @@ public class dailyData {
         }
     }
 
-    private static boolean tableExists(Connection conn, String tableName) {
-        try (Statement stmt = conn.createStatement()) {
-            stmt.executeQuery("SELECT 1 FROM " + tableName + " LIMIT 1");
-            return true;
-        } catch (SQLException e) {
-            return false;
-        }
-    }
-
+    // Rolls the day's histock_data into the consolidated OHLCV store in one statement
     private static void storeLastUpdateOfTheDay() throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASS)) {
-            Map<String, Integer> updateCounts = new HashMap<>();  // Initialize map to store update counts for each table
-            String selectSql = "SELECT DISTINCT symbol, date FROM histock_data";
-            try (Statement stmt = conn.createStatement();
-                 ResultSet rs = stmt.executeQuery(selectSql)) {
-                while (rs.next()) {
-                    String symbol = rs.getString("symbol");
-                    LocalDate date = rs.getDate("date").toLocalDate();
-                    String tableName = "daily_data_" + symbol.replaceAll("\\W", "_").toLowerCase();  // Normalize to lowercase
-
-                    if (!tableExists(conn, tableName)) {
-                        String createTableSql = "CREATE TABLE " + tableName + " (" +
-                                "date DATE," +
-                                "open DOUBLE," +
-                                "high DOUBLE," +
-                                "low DOUBLE," +
-                                "close DOUBLE," +
-                                "volume DOUBLE," +
-                                "turnover DOUBLE," +
-                                "PRIMARY KEY (date)" +
-                                ")";
-                        try (Statement createStmt = conn.createStatement()) {
-                            createStmt.executeUpdate(createTableSql);
-                            System.out.println("\u001B[32m"+"Table created: " + tableName+"\u001B[0m");
-                        }
-                    }
-
-                    String insertSql = "INSERT INTO " + tableName + " (date, open, high, low, close, volume, turnover) " +
-                            "SELECT date, open, high, low, close, vol, turnover FROM histock_data WHERE symbol = ? AND date = ? " +
-                            "ON DUPLICATE KEY UPDATE " +
-                            "open = VALUES(open), high = VALUES(high), low = VALUES(low), close = VALUES(close), volume = VALUES(volume), turnover = VALUES(turnover)";
-                    try (PreparedStatement pstmt = conn.prepareStatement(insertSql)) {
-                        pstmt.setString(1, symbol);
-                        pstmt.setObject(2, date);
-                        int rowsAffected = pstmt.executeUpdate();
-                        if (rowsAffected > 0) {
-                            updateCounts.put(tableName, updateCounts.getOrDefault(tableName, 0) + 1);  // Increment count for tableName
-                        }
-                        System.out.println("Table updated: " + tableName + " Updated count: " + updateCounts.get(tableName));
-                    }
-                }
-            }
-            System.out.println("Total updates for each table:");
-            for (Map.Entry<String, Integer> entry : updateCounts.entrySet()) {
-                System.out.println("Table " + entry.getKey() + " updated " + entry.getValue() + " times");
-            }
+        try (Connection conn = ConnectionPool.getConnection(DB_URL, DB_USER, DB_PASS)) {
+            OhlcvStore.createTable(conn);
+            OhlcvStore.rollupFromHistock(conn);
         }
     }
 
-
-
     private static Map<String, Object> getLastData(String symbol) throws SQLException {
-        Map<String, Object> data = new HashMap<>();
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASS)) {
-            String tableName = "daily_data_" + symbol.replace("-", "_");
-            String sql = "SELECT * FROM " + tableName + " WHERE date = (SELECT MAX(date) FROM " + tableName + ")";
-            try (Statement stmt = conn.createStatement();
-                 ResultSet rs = stmt.executeQuery(sql)) {
-                if (rs.next()) {
-                    ResultSetMetaData rsmd = rs.getMetaData();
-                    int columnCount = rsmd.getColumnCount();
-                    for (int i = 1; i <= columnCount; i++) {
-                        String name = rsmd.getColumnName(i);
-                        Object value = rs.getObject(i);
-                        data.put(name, value);
-                    }
-                }
-            }
+        try (Connection conn = ConnectionPool.getConnection(DB_URL, DB_USER, DB_PASS)) {
+            return OhlcvStore.lastRow(conn, symbol);
         }
-        return data;
     }
 }
@@ -1,35 +1,42 @@
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
-
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.sql.*;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Base64;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class liveData {
 
     private static final String DB_URL = "jdbc:mysql://localhost:3306/nepse_data";
     private static final String DB_USER = "root";
     private static final String DB_PASS = "";
-    private static final long INTERVAL = 60000;
+    private static final long INTERVAL = Long.getLong("collector.tickMs", 60000);
     private static final LocalTime START_OF_DAY = LocalTime.of(11, 00);
     private static final LocalTime END_OF_DAY = LocalTime.of(15, 01);
+    private static final MarketHours MARKET_HOURS = new MarketHours(START_OF_DAY, END_OF_DAY);
 
-    private static String lastHash = "";
+    private static final RowFingerprintCache fingerprints = new RowFingerprintCache();
+    private static final WriteBehindQueue<LiveRow> writeQueue = new WriteBehindQueue<>("liveData", liveData::writeChangedRows);
+    private static final List<TickListener> tickListeners = new CopyOnWriteArrayList<>();
     private static LocalDate lastCheckedDate = LocalDate.now();
 
+    // In-process consumers of each tick's changed rows (e.g. IntradayVaRService); called on the collector
+    // thread, so implementations should only hand the rows off
+    interface TickListener {
+        void onTick(List<LiveRow> changedRows, long tickMillis);
+    }
+
+    static void addTickListener(TickListener listener) {
+        tickListeners.add(listener);
+    }
+
     public static void main(String[] args) {
         try {
             createTableIfNotExists();
@@ -46,36 +53,32 @@ public class liveData {
                 LocalDate today = LocalDate.now();
 
                 if (!today.equals(lastCheckedDate)) {
+                    writeQueue.flush();
                     clearTransactionTable();
+                    fingerprints.clear();
+                    HttpFetcher.forgetAll();
                     lastCheckedDate = today;
                 }
 
-                if (now.isBefore(START_OF_DAY) || now.isAfter(END_OF_DAY)) {
+                if (!MARKET_HOURS.isOpen(LocalDateTime.now())) {
                     System.out.println("Market is closed. Sleeping until next check.");
+                    ConnectionPool.printAllStats();
+                    WriteBehindQueue.printAllStats();
+                    HttpFetcher.printStats();
                     Thread.sleep(getSleepDuration());
                     continue;
                 }
 
                 String currentDataURL = "https://www.sharesansar.com/live-trading";
-                String content = fetchData(currentDataURL);
-                String currentHash = generateHash(content);
-
-                if (!currentHash.equals(lastHash)) {
-                    scrapeAndStoreData(content);
-                    lastHash = currentHash;
-                    LocalDateTime nowDateTime = LocalDateTime.now();
-                    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-                    String formattedNow = nowDateTime.format(formatter);
-                    System.out.println("Data updated successfully at " + formattedNow);
-                } else {
-                    System.out.println("Data remains the same. Skipping database update.");
-                }
+                storeChangedRows(fetchData(currentDataURL));
             } catch (Exception e) {
                 System.err.println("Error fetching or storing data: " + e.getMessage());
+                HttpFetcher.forgetAll();
             }
 
             try {
-                Thread.sleep(INTERVAL);
+                // Sleeps to the next wall-clock boundary so ticks stay evenly spaced whatever the work took
+                Thread.sleep(TickScheduler.millisUntilNextBoundary(INTERVAL));
             } catch (InterruptedException e) {
                 System.err.println("Thread interrupted: " + e.getMessage());
                 Thread.currentThread().interrupt();
@@ -83,36 +86,98 @@ public class liveData {
         }
     }
 
-    private static long getSleepDuration() {
-        LocalTime now = LocalTime.now();
-        LocalTime nextStart = now.isBefore(START_OF_DAY) ? START_OF_DAY : START_OF_DAY.plusHours(24);
-        return java.time.Duration.between(now, nextStart).toMillis();
-    }
+    // One tick: queues the rows whose values changed since they were last written
+    private static void storeChangedRows(List<LiveRow> rows) throws InterruptedException {
+        List<LiveRow> changedRows = fingerprints.changedRows(rows);
 
-    private static String fetchData(String urlStr) throws IOException {
-        StringBuilder result = new StringBuilder();
-        URL url = new URL(urlStr);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("GET");
-        conn.setRequestProperty("User-Agent", "Mozilla/5.0");
-
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                result.append(line);
+        if (!changedRows.isEmpty()) {
+            long tickMillis = System.currentTimeMillis();
+            writeQueue.submit(changedRows, tickMillis);
+            for (TickListener listener : tickListeners) {
+                try {
+                    listener.onTick(changedRows, tickMillis);
+                } catch (RuntimeException e) {
+                    System.err.println("Error in tick listener: " + e.getMessage());
+                }
             }
+        } else {
+            System.out.println("Data remains the same. Skipping database update.");
         }
-        return result.toString();
+        System.out.println(fingerprints.endTick());
     }
 
-    private static String generateHash(String content) throws NoSuchAlgorithmException {
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        byte[] hash = digest.digest(content.getBytes(StandardCharsets.UTF_8));
-        return Base64.getEncoder().encodeToString(hash);
+    // Runs on the write-behind thread; fingerprints are committed only once the rows are in the database
+    private static void writeChangedRows(List<LiveRow> rows, long tickMillis) throws SQLException {
+        try {
+            scrapeAndStoreData(rows, tickMillis);
+        } catch (SQLException e) {
+            HttpFetcher.forgetAll();
+            throw e;
+        }
+        fingerprints.commit(rows);
+        String formattedNow = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        System.out.println("Data updated successfully at " + formattedNow);
+    }
+
+    // Hooks for running this collector inside CollectorDaemon instead of its own loop
+    static RowSink sink() {
+        return new RowSink() {
+            @Override
+            public String name() {
+                return "liveData";
+            }
+
+            @Override
+            public MarketHours marketHours() {
+                return MARKET_HOURS;
+            }
+
+            @Override
+            public void init() throws SQLException {
+                createTableIfNotExists();
+                createTransactionTableIfNotExists();
+            }
+
+            @Override
+            public void onRows(List<String[]> rows) throws InterruptedException {
+                storeChangedRows(TableRowExtractor.mapRows(rows, liveData::toLiveRow));
+            }
+
+            @Override
+            public void onNewDay() throws InterruptedException {
+                writeQueue.flush();
+                clearTransactionTable();
+                fingerprints.clear();
+            }
+        };
+    }
+
+    private static long getSleepDuration() {
+        return MARKET_HOURS.millisUntilNextOpen(LocalDateTime.now());
+    }
+
+    private static List<LiveRow> fetchData(String urlStr) throws IOException {
+        List<LiveRow> rows = new ArrayList<>();
+        InputStream body = HttpFetcher.fetch(urlStr);
+        if (body == null) {
+            System.out.println("Page not modified since last fetch: " + urlStr);
+            return rows;
+        }
+
+        // The page is tokenized as it arrives; only the table rows are kept
+        try (Reader reader = new InputStreamReader(body, StandardCharsets.UTF_8)) {
+            TableRowExtractor.extract(reader, cells -> {
+                LiveRow row = toLiveRow(cells);
+                if (row != null) {
+                    rows.add(row);
+                }
+            });
+        }
+        return rows;
     }
 
     private static void createTableIfNotExists() throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASS);
+        try (Connection conn = ConnectionPool.getConnection(DB_URL, DB_USER, DB_PASS);
              Statement stmt = conn.createStatement()) {
 
             String liveTableSQL = "CREATE TABLE IF NOT EXISTS live_data (" +
@@ -134,7 +199,13 @@ public class liveData {
     }
 
     private static void createTransactionTableIfNotExists() throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASS);
+        if (TickStorage.ENABLED) {
+            try (Connection conn = ConnectionPool.getConnection(DB_URL, DB_USER, DB_PASS)) {
+                TickStorage.createTable(conn, LocalDate.now());
+            }
+            return;
+        }
+        try (Connection conn = ConnectionPool.getConnection(DB_URL, DB_USER, DB_PASS);
              Statement stmt = conn.createStatement()) {
 
             String transactionTableSQL = "CREATE TABLE IF NOT EXISTS transaction_data (" +
@@ -155,8 +226,19 @@ public class liveData {
     }
 
     private static void clearTransactionTable() {
+        if (TickStorage.ENABLED) {
+            try (Connection conn = ConnectionPool.getConnection(DB_URL, DB_USER, DB_PASS)) {
+                if (TickStorage.isPartitioned(conn)) {
+                    TickStorage.rollover(conn, LocalDate.now());
+                    return;
+                }
+            } catch (SQLException e) {
+                System.err.println("Error rolling over tick storage: " + e.getMessage());
+                return;
+            }
+        }
         System.out.println("Starting to clear transaction table.");
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASS)) {
+        try (Connection conn = ConnectionPool.getConnection(DB_URL, DB_USER, DB_PASS)) {
             LocalDate today = LocalDate.now();
             System.out.println("Today's date: " + today);
 
@@ -196,98 +278,37 @@ public class liveData {
         }
     }
 
-    private static void scrapeAndStoreData(String content) throws SQLException {
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASS)) {
-            Document doc = Jsoup.parse(content);
-            for (Element row : doc.select("table.table tr")) {
-                Elements cells = row.select("td");
-
-                if (cells.size() < 2) {
-                    System.out.println("Skipping row with insufficient columns: " + row.text());
-                    continue;
-                }
+    private static LiveRow toLiveRow(String[] cells) {
+        if (cells.length < 2) {
+            System.out.println("Skipping row with insufficient columns: " + TableRowExtractor.rowText(cells));
+            return null;
+        }
 
-                String symbol = cells.get(1).text().trim();
-                if (symbol.isEmpty()) {
-                    System.out.println("Skipping row with empty symbol: " + row.text());
-                    continue;
-                }
+        String symbol = cells[1].trim();
+        if (symbol.isEmpty()) {
+            System.out.println("Skipping row with empty symbol: " + TableRowExtractor.rowText(cells));
+            return null;
+        }
 
-                while (cells.size() < 21) {
-                    cells.add(new Element("td").text("0"));
-                }
+        try {
+            return new LiveRow(LocalDate.now(), symbol,
+                    parseDouble(TableRowExtractor.cell(cells, 2)),
+                    TableRowExtractor.cell(cells, 3),
+                    TableRowExtractor.cell(cells, 4),
+                    parseDouble(TableRowExtractor.cell(cells, 5)),
+                    parseDouble(TableRowExtractor.cell(cells, 6)),
+                    parseDouble(TableRowExtractor.cell(cells, 7)),
+                    parseDouble(TableRowExtractor.cell(cells, 8)),
+                    parseDouble(TableRowExtractor.cell(cells, 9)));
+        } catch (Exception e) {
+            System.err.println("Error processing row: " + TableRowExtractor.rowText(cells) + " Error: " + e.getMessage());
+            return null;
+        }
+    }
 
-                try {
-                    LocalDate date = LocalDate.now();
-                    double ltp = parseDouble(cells.get(2).text());
-                    String pointChange = cells.get(3).text();
-                    String perChange = cells.get(4).text();
-                    double open = parseDouble(cells.get(5).text());
-                    double high = parseDouble(cells.get(6).text());
-                    double low = parseDouble(cells.get(7).text());
-                    double vol = parseDouble(cells.get(8).text());
-                    double prevClose = parseDouble(cells.get(9).text());
-
-                    // Insert or update in live_data table
-                    String checkSql = "SELECT COUNT(*) FROM live_data WHERE date = ? AND symbol = ?";
-                    try (PreparedStatement checkStmt = conn.prepareStatement(checkSql)) {
-                        checkStmt.setObject(1, date);
-                        checkStmt.setString(2, symbol);
-                        try (ResultSet rs = checkStmt.executeQuery()) {
-                            if (rs.next() && rs.getInt(1) > 0) {
-                                String updateSql = "UPDATE live_data SET ltp = ?, pointChange = ?, perChange = ?, open = ?, high = ?, low = ?, vol = ?, prev_close = ? WHERE date = ? AND symbol = ?";
-                                try (PreparedStatement updateStmt = conn.prepareStatement(updateSql)) {
-                                    updateStmt.setDouble(1, ltp);
-                                    updateStmt.setString(2, pointChange);
-                                    updateStmt.setString(3, perChange);
-                                    updateStmt.setDouble(4, open);
-                                    updateStmt.setDouble(5, high);
-                                    updateStmt.setDouble(6, low);
-                                    updateStmt.setDouble(7, vol);
-                                    updateStmt.setDouble(8, prevClose);
-                                    updateStmt.setObject(9, date);
-                                    updateStmt.setString(10, symbol);
-                                    updateStmt.executeUpdate();
-                                }
-                            } else {
-                                String insertSql = "INSERT INTO live_data (date, symbol, ltp, pointChange, perChange, open, high, low, vol, prev_close) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-                                try (PreparedStatement insertStmt = conn.prepareStatement(insertSql)) {
-                                    insertStmt.setObject(1, date);
-                                    insertStmt.setString(2, symbol);
-                                    insertStmt.setDouble(3, ltp);
-                                    insertStmt.setString(4, pointChange);
-                                    insertStmt.setString(5, perChange);
-                                    insertStmt.setDouble(6, open);
-                                    insertStmt.setDouble(7, high);
-                                    insertStmt.setDouble(8, low);
-                                    insertStmt.setDouble(9, vol);
-                                    insertStmt.setDouble(10, prevClose);
-                                    insertStmt.executeUpdate();
-                                }
-                            }
-                        }
-                    }
-
-                    // Insert into transaction_data table
-                    String transactionSql = "INSERT INTO transaction_data (timestamp, symbol, ltp, pointChange, perChange, open, high, low, vol, prev_close) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-                    try (PreparedStatement transactionStmt = conn.prepareStatement(transactionSql)) {
-                        transactionStmt.setTimestamp(1, Timestamp.valueOf(LocalDateTime.now()));
-                        transactionStmt.setString(2, symbol);
-                        transactionStmt.setDouble(3, ltp);
-                        transactionStmt.setString(4, pointChange);
-                        transactionStmt.setString(5, perChange);
-                        transactionStmt.setDouble(6, open);
-                        transactionStmt.setDouble(7, high);
-                        transactionStmt.setDouble(8, low);
-                        transactionStmt.setDouble(9, vol);
-                        transactionStmt.setDouble(10, prevClose);
-                        transactionStmt.executeUpdate();
-                    }
-
-                } catch (Exception e) {
-                    System.err.println("Error processing row: " + row.text() + " Error: " + e.getMessage());
-                }
-            }
+    private static void scrapeAndStoreData(List<LiveRow> rows, long tickMillis) throws SQLException {
+        try (Connection conn = ConnectionPool.getConnection(DB_URL, DB_USER, DB_PASS)) {
+            BulkUpsertWriter.writeLiveData(conn, rows, new Timestamp(tickMillis));
         }
     }
 
@@ -0,0 +1,88 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.SplittableRandom;
+
+// Simulates BATCH paths together: the uniforms come from a lane-wise SplitMix64 counter, a vectorized Box-Muller
+// transform turns them into one normal shock per path, and the shocks are scaled into returns lane-wise. Kept out of src/main/java so the main tree
+// builds without the incubator module; compile it on its own against the main classes:
+//   javac --add-modules jdk.incubator.vector -cp <main classes> -d <main classes> src/vector/java/VectorKernel.java
+// and run with --add-modules jdk.incubator.vector. MonteCarloEngine loads it by name and falls back to
+// ScalarKernel when the class or the module is missing.
+// Draws differ from the scalar kernel's, so a seed reproduces results per kernel, not across kernels.
+public class VectorKernel implements SimulationKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = SPECIES.withLanes(long.class);
+    // SplitMix64 counter increment (SplittableRandom's default gamma)
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    // Paths per batch; even and a multiple of every species length
+    private static final int BATCH = 256;
+
+    @Override
+    public String name() {
+        return "vector";
+    }
+
+    @Override
+    public int lanes() {
+        return SPECIES.length();
+    }
+
+    @Override
+    public void simulate(double[] returns, int from, int to, double pathDrift, double pathDiffusion, SplittableRandom random) {
+        double[] normals = new double[BATCH];
+        double[] uniforms = new double[BATCH];
+        for (int p0 = from; p0 < to; p0 += BATCH) {
+            int width = Math.min(BATCH, to - p0);
+            gaussians(normals, uniforms, random);
+            int i = 0;
+            for (; i < SPECIES.loopBound(width); i += SPECIES.length()) {
+                DoubleVector.fromArray(SPECIES, normals, i).mul(pathDiffusion).add(pathDrift).intoArray(returns, p0 + i);
+            }
+            for (; i < width; i++) {
+                returns[p0 + i] = pathDrift + pathDiffusion * normals[i];
+            }
+        }
+    }
+
+    // Fills out with standard normals: the uniforms' first half gives the radii, the second half the angles
+    static void gaussians(double[] out, double[] uniforms, SplittableRandom random) {
+        uniforms(uniforms, random);
+        int half = out.length / 2;
+        int i = 0;
+        for (; i < SPECIES.loopBound(half); i += SPECIES.length()) {
+            // 1 - u keeps the log argument in (0, 1]
+            DoubleVector radius = DoubleVector.fromArray(SPECIES, uniforms, i).neg().add(1)
+                    .lanewise(VectorOperators.LOG).mul(-2).lanewise(VectorOperators.SQRT);
+            DoubleVector theta = DoubleVector.fromArray(SPECIES, uniforms, half + i).mul(2 * Math.PI);
+            radius.mul(theta.lanewise(VectorOperators.COS)).intoArray(out, i);
+            radius.mul(theta.lanewise(VectorOperators.SIN)).intoArray(out, half + i);
+        }
+        for (; i < half; i++) {
+            double radius = Math.sqrt(-2 * Math.log(1 - uniforms[i]));
+            double theta = 2 * Math.PI * uniforms[half + i];
+            out[i] = radius * Math.cos(theta);
+            out[half + i] = radius * Math.sin(theta);
+        }
+    }
+
+    // Uniforms in [0, 1) from SplitMix64, the mix behind SplittableRandom, run lane-wise over a counter that
+    // starts at one draw from random; the top 52 bits of each mixed word become the mantissa of a double in [1, 2).
+    // out.length must be a multiple of the lane count (BATCH is).
+    static void uniforms(double[] out, SplittableRandom random) {
+        // Lane j of the k-th step holds seed + (k * lanes + j + 1) * gamma, as if SplittableRandom were stepped in order
+        LongVector state = LongVector.zero(LONGS).addIndex(1).add(1).mul(GOLDEN_GAMMA).add(random.nextLong());
+        long step = LONGS.length() * GOLDEN_GAMMA;
+        for (int i = 0; i < out.length; i += LONGS.length()) {
+            LongVector z = state;
+            z = z.lanewise(VectorOperators.XOR, z.lanewise(VectorOperators.LSHR, 30)).mul(0xbf58476d1ce4e5b9L);
+            z = z.lanewise(VectorOperators.XOR, z.lanewise(VectorOperators.LSHR, 27)).mul(0x94d049bb133111ebL);
+            z = z.lanewise(VectorOperators.XOR, z.lanewise(VectorOperators.LSHR, 31));
+            z.lanewise(VectorOperators.LSHR, 12).or(0x3FF0000000000000L).reinterpretAsDoubles().sub(1).intoArray(out, i);
+            state = state.add(step);
+        }
+    }
+}